@@ -0,0 +1,66 @@
+package sh.mob.timer.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Optional;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import reactor.core.scheduler.Schedulers;
+import tools.jackson.databind.json.JsonMapper;
+
+/** Builds rooms and repositories the way the application does, without Spring. */
+final class Benchmarks {
+
+  private static final SseFrameEncoder ENCODER = new SseFrameEncoder(JsonMapper.builder().build());
+  private static final RoomShards SHARDS = new RoomShards(1);
+
+  private Benchmarks() {}
+
+  static SseFrameEncoder encoder() {
+    return ENCODER;
+  }
+
+  static RoomContext roomContext(int historyCapacity) {
+    return new RoomContext(
+        historyCapacity,
+        16,
+        8,
+        Duration.ofSeconds(30),
+        Duration.ZERO,
+        new LiveCounters(),
+        new RoomMetrics(new SimpleMeterRegistry()),
+        ENCODER,
+        new StringPool(1 << 16),
+        RoomJournal.NONE,
+        SHARDS);
+  }
+
+  static RoomRepository roomRepository(int maxRooms) {
+    return new RoomRepository(
+        new RoomNameGenerator(),
+        ENCODER,
+        Optional.empty(),
+        Optional.empty(),
+        Schedulers.immediate(),
+        Duration.ofHours(24),
+        10_000,
+        16,
+        8,
+        Duration.ofSeconds(30),
+        Duration.ZERO,
+        maxRooms,
+        0,
+        new SimpleMeterRegistry());
+  }
+
+  /** A template engine resolving the templates like Spring Boot does. */
+  static ITemplateEngine templateEngine() {
+    var resolver = new ClassLoaderTemplateResolver();
+    resolver.setPrefix("templates/");
+    resolver.setSuffix(".html");
+    var templateEngine = new SpringTemplateEngine();
+    templateEngine.setTemplateResolver(resolver);
+    return templateEngine;
+  }
+}
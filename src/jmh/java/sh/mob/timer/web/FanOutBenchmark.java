@@ -0,0 +1,57 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+/**
+ * Adding a timer to a room with subscribers, including encoding the event and writing it into a
+ * buffer for every subscriber, as the event stream does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FanOutBenchmark {
+
+  @Param({"1", "50", "500"})
+  int subscribers;
+
+  private final Disposable.Composite subscriptions = Disposables.composite();
+  private Room room;
+  private long bytes;
+
+  @Setup
+  public void setUp() {
+    room = new Room("big-boar-37", Instant.now(), Benchmarks.roomContext(1_000));
+    var bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    for (int i = 0; i < subscribers; i++) {
+      room.connectionOpened();
+      subscriptions.add(
+          room.frames(null)
+              .map(frame -> frame.toDataBuffer(bufferFactory))
+              .subscribe(buffer -> bytes += buffer.readableByteCount()));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    subscriptions.dispose();
+  }
+
+  @Benchmark
+  public long addTimer() {
+    room.addTimer(10L, "alice", Instant.now());
+    return bytes;
+  }
+}
@@ -0,0 +1,63 @@
+package sh.mob.timer.web;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+/**
+ * One keep alive tick for all open event streams, including writing the frame into a buffer for
+ * every stream. Time is virtual, so a tick runs the single scheduler task that all streams share.
+ * Run with {@code -prof gc} to compare the allocations per tick across stream counts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeepAliveBenchmark {
+
+  private static final Duration INTERVAL = Duration.ofSeconds(5);
+
+  @Param({"1", "50", "500"})
+  int streams;
+
+  private final Disposable.Composite subscriptions = Disposables.composite();
+  private VirtualTimeScheduler scheduler;
+  private long bytes;
+
+  @Setup
+  public void setUp() {
+    scheduler = VirtualTimeScheduler.getOrSet();
+    var keepAlive = new KeepAlive(Benchmarks.encoder(), INTERVAL);
+    var bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    for (int i = 0; i < streams; i++) {
+      subscriptions.add(
+          keepAlive
+              .frames()
+              .map(frame -> frame.toDataBuffer(bufferFactory))
+              .subscribe(buffer -> bytes += buffer.readableByteCount()));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    subscriptions.dispose();
+    VirtualTimeScheduler.reset();
+  }
+
+  @Benchmark
+  public long tick() {
+    scheduler.advanceTimeBy(INTERVAL);
+    return bytes;
+  }
+}
@@ -0,0 +1,63 @@
+package sh.mob.timer.web;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+import sh.mob.timer.web.RoomController.RoomPage;
+
+/**
+ * Pages per second of {@code /} and {@code /{room}}, rendered by Thymeleaf on every request as
+ * before, and copied from the prerendered page as now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PageBenchmark {
+
+  private static final String URL = "https://timer.mob.sh/";
+
+  private final ITemplateEngine templateEngine = Benchmarks.templateEngine();
+  private final RoomNameGenerator roomNameGenerator = new RoomNameGenerator();
+  private final PrerenderedPage roomPage =
+      new PrerenderedPage(
+          templateEngine,
+          "room",
+          Map.of("room", new RoomPage(PrerenderedPage.PLACEHOLDER)),
+          true);
+  private final PrerenderedPage indexPage =
+      new PrerenderedPage(
+          templateEngine,
+          "index",
+          Map.of("url", URL, "randomRoomName", PrerenderedPage.PLACEHOLDER),
+          true);
+
+  @Benchmark
+  public String renderRoom() {
+    return templateEngine.process(
+        "room", new Context(null, Map.of("room", new RoomPage("big-boar-37"))));
+  }
+
+  @Benchmark
+  public Object prerenderedRoom() {
+    return roomPage.render("big-boar-37");
+  }
+
+  @Benchmark
+  public String renderIndex() {
+    var randomRoomName = roomNameGenerator.randomName(name -> false);
+    return templateEngine.process(
+        "index", new Context(null, Map.of("url", URL, "randomRoomName", randomRoomName)));
+  }
+
+  @Benchmark
+  public Object prerenderedIndex() {
+    return indexPage.render(roomNameGenerator.randomName(name -> false));
+  }
+}
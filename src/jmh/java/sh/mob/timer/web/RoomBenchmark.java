@@ -0,0 +1,77 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import sh.mob.timer.web.Room.TimerRequest;
+
+/**
+ * Adding timers to a room and reading its history, for histories from 10 to 100k requests. The
+ * history capacity equals its size, so adding a timer drops old requests like a full room does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoomBenchmark {
+
+  private static final String[] USERS = {"alice", "bob", "carol", "dave", "erin"};
+
+  @Param({"10", "1000", "100000"})
+  int historySize;
+
+  private Room room;
+  private Rotation rotation;
+  private Instant now;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    room = new Room("big-boar-37", Instant.now(), Benchmarks.roomContext(historySize));
+    now = Instant.now();
+    for (int i = 0; i < historySize; i++) {
+      room.addTimer(10L, USERS[i % USERS.length], now);
+    }
+    rotation = new Rotation();
+    rotation.rebuild(room.historyWithoutLatest());
+    room.lastTimerRequest().ifPresent(rotation::add);
+  }
+
+  /** Cycles through the users without overflowing, which long runs of fast benchmarks reach. */
+  private String nextUserName() {
+    next = next + 1 == USERS.length ? 0 : next + 1;
+    return USERS[next];
+  }
+
+  @Benchmark
+  public void addTimer() {
+    room.addTimer(10L, nextUserName(), Instant.now());
+  }
+
+  @Benchmark
+  public String nextUser() {
+    return rotation.nextUser(nextUserName());
+  }
+
+  @Benchmark
+  public boolean isTimerActive() {
+    return room.isTimerActive(now);
+  }
+
+  @Benchmark
+  public List<TimerRequest> historyWithoutLatest() {
+    return room.historyWithoutLatest();
+  }
+
+  @Benchmark
+  public SseFrame initialHistoryFrame() {
+    return room.initialHistoryFrame();
+  }
+}
@@ -0,0 +1,69 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Room lookups and timer requests from several threads and the global counters, with 1k to 1M
+ * rooms in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoomRepositoryBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  int rooms;
+
+  private RoomRepository roomRepository;
+  private String[] names;
+  private Instant now;
+
+  @Setup
+  public void setUp() {
+    roomRepository = Benchmarks.roomRepository(rooms);
+    now = Instant.now();
+    names = new String[rooms];
+    for (int i = 0; i < rooms; i++) {
+      names[i] = "room-" + i;
+      var room = roomRepository.get(names[i]);
+      if (i % 10 == 0) {
+        room.connectionOpened();
+      }
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Room get() {
+    return roomRepository.get(names[ThreadLocalRandom.current().nextInt(names.length)]);
+  }
+
+  /** A timer request handed to the shard of its room, with the requesting threads waiting. */
+  @Benchmark
+  @Threads(4)
+  public void addTimer() {
+    var name = names[ThreadLocalRandom.current().nextInt(names.length)];
+    roomRepository.addTimer(name, 10L, "alice", now).block();
+  }
+
+  @Benchmark
+  public long countConnections() {
+    return roomRepository.countConnections();
+  }
+
+  @Benchmark
+  public long countActiveTimers() {
+    return roomRepository.countActiveTimers();
+  }
+}
@@ -0,0 +1,32 @@
+package sh.mob.timer.web;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Increment throughput of the timer statistics. Run it with {@code -t 1} up to {@code -t 32} to
+ * see how it scales with the number of concurrent writers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatsBenchmark {
+
+  private final Stats stats = new Stats();
+
+  @Benchmark
+  public void incrementPopularTimer() {
+    stats.incrementTimer("big-boar-37", 10);
+  }
+
+  @Benchmark
+  public void incrementRandomTimer() {
+    stats.incrementTimer("big-boar-37", ThreadLocalRandom.current().nextInt(1, 60));
+  }
+}
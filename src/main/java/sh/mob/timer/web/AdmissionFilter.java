@@ -0,0 +1,113 @@
+package sh.mob.timer.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rejects requests that would change rooms or open event streams faster than allowed, with {@code
+ * 429 Too Many Requests} and a {@code Retry-After} header.
+ *
+ * <p>Changes, batches and new connections are charged to the token buckets of {@link RateLimits}.
+ * Event streams and WebSockets are also only admitted while the node has fewer than {@code
+ * room.limits.max-connections} connections and their room fewer than {@code
+ * room.limits.max-connections-per-room}. Both are soft caps: they are checked against the
+ * connections that are open when a request arrives, so a burst of connections that are set up at
+ * the same time, e.g. to a room that is not in memory yet, can exceed them by that burst.
+ *
+ * <p>A rejection is decided before the request body is read or a room is looked up, so it costs
+ * little more than parsing the path. The operations of a batch are only known once its body is
+ * read, so the batch endpoint charges their rooms itself. Any rate or cap of 0 disables it.
+ */
+@Component
+public class AdmissionFilter implements WebFilter {
+
+  private final RoomRepository roomRepository;
+  private final RateLimits rateLimits;
+  private final long maxConnections;
+  private final int maxConnectionsPerRoom;
+  private final Counter connectionRejections;
+  private final Counter roomConnectionRejections;
+
+  public AdmissionFilter(
+      RoomRepository roomRepository,
+      RateLimits rateLimits,
+      @Value("${room.limits.max-connections}") long maxConnections,
+      @Value("${room.limits.max-connections-per-room}") int maxConnectionsPerRoom,
+      MeterRegistry meterRegistry) {
+    this.roomRepository = roomRepository;
+    this.rateLimits = rateLimits;
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerRoom = maxConnectionsPerRoom;
+    this.connectionRejections = rejections("connections", meterRegistry);
+    this.roomConnectionRejections = rejections("room.connections", meterRegistry);
+  }
+
+  static Counter rejections(String limit, MeterRegistry meterRegistry) {
+    return Counter.builder("timer.requests.rejected")
+        .description("Requests rejected with 429, by the limit they exceeded")
+        .tag("limit", limit)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    var request = exchange.getRequest();
+    var path = request.getPath().pathWithinApplication().value();
+    var method = request.getMethod();
+    var client = request.getRemoteAddress();
+    long now = System.nanoTime();
+
+    if (HttpMethod.POST.equals(method) && path.equals("/batch")) {
+      return admit(exchange, chain, rateLimits.tryAcquireClient(client, now));
+    }
+    int end = path.indexOf('/', 1);
+    var room = path.substring(1, end < 0 ? path.length() : end);
+    var rest = end < 0 ? "" : path.substring(end);
+    if (room.isEmpty()) {
+      return chain.filter(exchange);
+    }
+    boolean changes =
+        (HttpMethod.PUT.equals(method) && (rest.isEmpty() || rest.equals("/goal")))
+            || (HttpMethod.DELETE.equals(method) && rest.equals("/goal"));
+    if (changes) {
+      return admit(exchange, chain, rateLimits.tryAcquireChange(client, room, now));
+    }
+    boolean connects =
+        HttpMethod.GET.equals(method) && (rest.equals("/events") || rest.equals("/websocket"));
+    if (connects) {
+      if (maxConnections > 0 && roomRepository.countConnections() >= maxConnections) {
+        connectionRejections.increment();
+        return reject(exchange, TimeUnit.SECONDS.toNanos(1));
+      }
+      if (maxConnectionsPerRoom > 0
+          && roomRepository.find(room).map(Room::subscriberCount).orElse(0)
+              >= maxConnectionsPerRoom) {
+        roomConnectionRejections.increment();
+        return reject(exchange, TimeUnit.SECONDS.toNanos(1));
+      }
+      return admit(exchange, chain, rateLimits.tryAcquireClient(client, now));
+    }
+    return chain.filter(exchange);
+  }
+
+  private static Mono<Void> admit(ServerWebExchange exchange, WebFilterChain chain, long wait) {
+    return wait > 0 ? reject(exchange, wait) : chain.filter(exchange);
+  }
+
+  private static Mono<Void> reject(ServerWebExchange exchange, long waitNanos) {
+    var response = exchange.getResponse();
+    response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+    response.getHeaders().set(HttpHeaders.RETRY_AFTER, RateLimits.retryAfter(waitNanos));
+    return response.setComplete();
+  }
+}
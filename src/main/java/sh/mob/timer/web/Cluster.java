@@ -0,0 +1,81 @@
+package sh.mob.timer.web;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Membership of this node in a cluster of timer nodes.
+ *
+ * <p>Every room is owned by exactly one node, chosen by consistent hashing on its name. Only the
+ * owner keeps the room in memory; other nodes forward requests for it and relay its events to their
+ * subscribers through the {@link RoomBus}. All nodes must be configured with the same list of
+ * nodes, and the bus must reach all of them: a node refuses to start otherwise.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class Cluster implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(Cluster.class);
+
+  private final String nodeId;
+  private final List<String> nodes;
+  private final HashRing ring;
+  private final RoomBus bus;
+
+  public Cluster(
+      @Value("${cluster.node-id}") String nodeId,
+      @Value("${cluster.nodes}") List<String> nodes,
+      @Value("${cluster.virtual-nodes}") int virtualNodes,
+      RoomBus bus) {
+    if (!nodes.contains(nodeId)) {
+      throw new IllegalArgumentException("Node " + nodeId + " is not one of " + nodes);
+    }
+    this.nodeId = nodeId;
+    this.nodes = List.copyOf(nodes);
+    this.ring = new HashRing(nodes, virtualNodes);
+    this.bus = bus;
+  }
+
+  void join(RoomNode local) {
+    bus.join(nodeId, local);
+    log.info("Node {} joined the cluster", nodeId);
+  }
+
+  /** Fails if the bus cannot reach one of the configured nodes. */
+  void checkReachable() {
+    var unreachable = new ArrayList<String>();
+    for (var node : nodes) {
+      try {
+        bus.node(node);
+      } catch (IllegalStateException e) {
+        unreachable.add(node);
+      }
+    }
+    if (!unreachable.isEmpty()) {
+      throw new IllegalStateException(
+          "Nodes "
+              + unreachable
+              + " of the cluster are not reachable through "
+              + bus.getClass().getSimpleName());
+    }
+  }
+
+  boolean owns(String room) {
+    return ring.owner(room).equals(nodeId);
+  }
+
+  RoomNode owner(String room) {
+    return bus.node(ring.owner(room));
+  }
+
+  @Override
+  public void destroy() {
+    bus.leave(nodeId);
+  }
+}
@@ -0,0 +1,223 @@
+package sh.mob.timer.web;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import sh.mob.timer.web.Room.Goal;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+
+/**
+ * A schema-fixed binary form of the room events, for clients that opt in with {@code
+ * ?encoding=compact}. It is sent base64 encoded in the {@code data:} field; the event name tells
+ * which schema applies.
+ *
+ * <p>Numbers are unsigned LEB128 varints, signed numbers are zigzag encoded first. Strings are a
+ * varint length followed by UTF-8. Times are epoch milliseconds.
+ *
+ * <ul>
+ *   <li>{@code TIMER_REQUEST} and {@code KEEP_ALIVE}: a flags byte (1 timer, 2 requested, 4 user, 8
+ *       next user, bits 4-5 the type: 1 timer, 2 break timer), then the present fields in that
+ *       order: timer as varint, requested as signed varint, user and next user as strings.
+ *   <li>{@code INITIAL_HISTORY}: the number of distinct users, the users as strings, the number of
+ *       timer requests, then the timer requests as above, except that users are varint indexes
+ *       into the users and requested is the difference to the previous timer request.
+ *   <li>{@code GOAL_REQUEST}: a flags byte (1 goal, 2 user, 4 requested), then goal and user as
+ *       strings and requested as signed varint.
+ * </ul>
+ */
+final class CompactEncoding {
+
+  private CompactEncoding() {}
+
+  static byte[] encode(Object data) {
+    var out = new ByteArrayOutputStream(32);
+    switch (data) {
+      case TimerRequest timerRequest -> writeTimerRequest(out, timerRequest, 0, null);
+      case Goal goal -> writeGoal(out, goal);
+      case List<?> history -> writeHistory(out, history);
+      default -> throw new IllegalArgumentException("Cannot encode " + data.getClass());
+    }
+    return out.toByteArray();
+  }
+
+  /** Decodes the data of the given event, for clients written in Java and for tests. */
+  static Object decode(String event, byte[] bytes) {
+    var in = new ByteArrayInputStream(bytes);
+    return switch (event) {
+      case "INITIAL_HISTORY" -> readHistory(in);
+      case "GOAL_REQUEST" -> readGoal(in);
+      default -> readTimerRequest(in, 0, null);
+    };
+  }
+
+  private static void writeHistory(ByteArrayOutputStream out, List<?> history) {
+    var users = new LinkedHashMap<String, Integer>();
+    for (var entry : history) {
+      var timerRequest = (TimerRequest) entry;
+      intern(users, timerRequest.getUser());
+      intern(users, timerRequest.getNextUser());
+    }
+    writeVarLong(out, users.size());
+    users.keySet().forEach(user -> writeString(out, user));
+    writeVarLong(out, history.size());
+    long previous = 0;
+    for (var entry : history) {
+      var timerRequest = (TimerRequest) entry;
+      writeTimerRequest(out, timerRequest, previous, users);
+      if (timerRequest.getRequested() != null) {
+        previous = timerRequest.getRequested().toEpochMilli();
+      }
+    }
+  }
+
+  private static void intern(Map<String, Integer> users, String user) {
+    if (user != null) {
+      users.putIfAbsent(user, users.size());
+    }
+  }
+
+  private static void writeTimerRequest(
+      ByteArrayOutputStream out,
+      TimerRequest timerRequest,
+      long previous,
+      Map<String, Integer> users) {
+    int flags =
+        (timerRequest.getTimer() != null ? 1 : 0)
+            | (timerRequest.getRequested() != null ? 2 : 0)
+            | (timerRequest.getUser() != null ? 4 : 0)
+            | (timerRequest.getNextUser() != null ? 8 : 0)
+            | (timerRequest.getType() != null ? (timerRequest.getType().ordinal() + 1) << 4 : 0);
+    out.write(flags);
+    if (timerRequest.getTimer() != null) {
+      writeVarLong(out, timerRequest.getTimer());
+    }
+    if (timerRequest.getRequested() != null) {
+      writeVarLong(out, zigzag(timerRequest.getRequested().toEpochMilli() - previous));
+    }
+    if (timerRequest.getUser() != null) {
+      writeUser(out, timerRequest.getUser(), users);
+    }
+    if (timerRequest.getNextUser() != null) {
+      writeUser(out, timerRequest.getNextUser(), users);
+    }
+  }
+
+  private static void writeUser(
+      ByteArrayOutputStream out, String user, Map<String, Integer> users) {
+    if (users == null) {
+      writeString(out, user);
+    } else {
+      writeVarLong(out, users.get(user));
+    }
+  }
+
+  private static void writeGoal(ByteArrayOutputStream out, Goal goal) {
+    out.write(
+        (goal.goal() != null ? 1 : 0)
+            | (goal.user() != null ? 2 : 0)
+            | (goal.requested() != null ? 4 : 0));
+    if (goal.goal() != null) {
+      writeString(out, goal.goal());
+    }
+    if (goal.user() != null) {
+      writeString(out, goal.user());
+    }
+    if (goal.requested() != null) {
+      writeVarLong(out, zigzag(goal.requested().toEpochMilli()));
+    }
+  }
+
+  private static List<TimerRequest> readHistory(ByteArrayInputStream in) {
+    var users = new String[(int) readVarLong(in)];
+    for (int i = 0; i < users.length; i++) {
+      users[i] = readString(in);
+    }
+    int size = (int) readVarLong(in);
+    var history = new ArrayList<TimerRequest>(size);
+    long previous = 0;
+    for (int i = 0; i < size; i++) {
+      var timerRequest = readTimerRequest(in, previous, users);
+      if (timerRequest.getRequested() != null) {
+        previous = timerRequest.getRequested().toEpochMilli();
+      }
+      history.add(timerRequest);
+    }
+    return history;
+  }
+
+  private static TimerRequest readTimerRequest(
+      ByteArrayInputStream in, long previous, String[] users) {
+    int flags = in.read();
+    var timer = (flags & 1) != 0 ? readVarLong(in) : null;
+    var requested =
+        (flags & 2) != 0 ? Instant.ofEpochMilli(previous + unzigzag(readVarLong(in))) : null;
+    var user = (flags & 4) != 0 ? readUser(in, users) : null;
+    var nextUser = (flags & 8) != 0 ? readUser(in, users) : null;
+    int type = flags >> 4;
+    return new TimerRequest(
+        timer, requested, user, nextUser, type == 0 ? null : TimerType.values()[type - 1]);
+  }
+
+  private static String readUser(ByteArrayInputStream in, String[] users) {
+    return users == null ? readString(in) : users[(int) readVarLong(in)];
+  }
+
+  private static Goal readGoal(ByteArrayInputStream in) {
+    int flags = in.read();
+    var goal = (flags & 1) != 0 ? readString(in) : null;
+    var user = (flags & 2) != 0 ? readString(in) : null;
+    var requested = (flags & 4) != 0 ? Instant.ofEpochMilli(unzigzag(readVarLong(in))) : null;
+    return new Goal(goal, user, requested);
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String value) {
+    var bytes = value.getBytes(UTF_8);
+    writeVarLong(out, bytes.length);
+    out.writeBytes(bytes);
+  }
+
+  private static String readString(ByteArrayInputStream in) {
+    var bytes = new byte[(int) readVarLong(in)];
+    if (in.read(bytes, 0, bytes.length) < bytes.length) {
+      throw new IllegalArgumentException("Truncated string");
+    }
+    return new String(bytes, UTF_8);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(ByteArrayInputStream in) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new IllegalArgumentException("Truncated varint");
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
@@ -0,0 +1,54 @@
+package sh.mob.timer.web;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Elements ordered by the instant at which they are due.
+ *
+ * <p>Polling only touches elements that are due, so the cost of a sweep is proportional to the
+ * number of expired elements and not to the number of scheduled ones.
+ */
+final class DeadlineQueue<T> {
+
+  private record Entry<T>(long deadline, T element) {}
+
+  private final PriorityQueue<Entry<T>> queue =
+      new PriorityQueue<>((a, b) -> Long.compare(a.deadline(), b.deadline()));
+
+  synchronized void schedule(T element, Instant deadline) {
+    queue.add(new Entry<>(deadline.toEpochMilli(), element));
+  }
+
+  synchronized int size() {
+    return queue.size();
+  }
+
+  synchronized void clear() {
+    queue.clear();
+  }
+
+  /**
+   * Removes all elements that are due at {@code now} and hands them to {@code consumer} together
+   * with their deadline. The consumer is called without holding the lock, so it may schedule
+   * elements again.
+   *
+   * @return how long the most overdue element has been waiting, or zero if none was due
+   */
+  Duration pollExpired(Instant now, BiConsumer<T, Instant> consumer) {
+    var due = new ArrayList<Entry<T>>();
+    long nowMillis = now.toEpochMilli();
+    synchronized (this) {
+      while (!queue.isEmpty() && queue.peek().deadline() <= nowMillis) {
+        due.add(queue.poll());
+      }
+    }
+    for (var entry : due) {
+      consumer.accept(entry.element(), Instant.ofEpochMilli(entry.deadline()));
+    }
+    return due.isEmpty() ? Duration.ZERO : Duration.ofMillis(nowMillis - due.get(0).deadline());
+  }
+}
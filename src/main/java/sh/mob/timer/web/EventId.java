@@ -0,0 +1,35 @@
+package sh.mob.timer.web;
+
+import java.util.Optional;
+
+/**
+ * Identifies a timer or goal event of a room, sent to clients as the SSE {@code id:} field.
+ *
+ * <p>Sequences start at 1 for every room instance. The epoch tells instances of the same room
+ * apart, so that an id from before a restart or eviction is never mistaken for a current one.
+ */
+record EventId(long epoch, long sequence) {
+
+  static Optional<EventId> parse(String value) {
+    if (value == null) {
+      return Optional.empty();
+    }
+    int separator = value.indexOf('-');
+    if (separator < 0) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(
+          new EventId(
+              Long.parseLong(value, 0, separator, 10),
+              Long.parseLong(value, separator + 1, value.length(), 10)));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return epoch + "-" + sequence;
+  }
+}
@@ -0,0 +1,112 @@
+package sh.mob.timer.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.SimpleAsyncTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Where the work around the reactive pipeline runs, so that it never holds up a Netty event loop
+ * or another job.
+ *
+ * <p>The {@code @Scheduled} jobs run on a pool of {@code room.execution.pool-size} platform
+ * threads, or on a virtual thread per run with {@code room.execution.virtual-threads=true}, instead
+ * of the single default scheduler thread. A slow cleanup sweep no longer delays the one second
+ * ticks. How late each job starts is recorded by {@link LagRecordingTaskScheduler}.
+ *
+ * <p>With the journal enabled, looking up a room may block while it is restored from disk or the
+ * journal is compacted. Then request handlers that do not return a reactive type and subscriptions
+ * to the events of a room run on threads of the same kind as well, and so does the lookup of the
+ * room that a change is for, before the change itself is handed to the {@link RoomShards}.
+ */
+@Configuration
+public class ExecutionConfiguration
+    implements SchedulingConfigurer, WebFluxConfigurer, DisposableBean {
+
+  private final TaskScheduler maintenance;
+  private final AsyncTaskExecutor blocking;
+  private final MeterRegistry meterRegistry;
+
+  public ExecutionConfiguration(
+      @Value("${room.execution.virtual-threads}") boolean virtualThreads,
+      @Value("${room.execution.pool-size}") int poolSize,
+      @Value("${room.journal.enabled}") boolean journalEnabled,
+      MeterRegistry meterRegistry) {
+    this.maintenance = maintenanceScheduler(virtualThreads, poolSize);
+    this.blocking = journalEnabled ? blockingExecutor(virtualThreads, poolSize) : null;
+    this.meterRegistry = meterRegistry;
+  }
+
+  private static TaskScheduler maintenanceScheduler(boolean virtualThreads, int poolSize) {
+    if (virtualThreads) {
+      var scheduler = new SimpleAsyncTaskScheduler();
+      scheduler.setVirtualThreads(true);
+      scheduler.setThreadNamePrefix("room-maintenance-");
+      return scheduler;
+    }
+    var scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(poolSize);
+    scheduler.setThreadNamePrefix("room-maintenance-");
+    scheduler.initialize();
+    return scheduler;
+  }
+
+  private static AsyncTaskExecutor blockingExecutor(boolean virtualThreads, int poolSize) {
+    if (virtualThreads) {
+      var executor = new SimpleAsyncTaskExecutor("room-blocking-");
+      executor.setVirtualThreads(true);
+      return executor;
+    }
+    var executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setThreadNamePrefix("room-blocking-");
+    executor.initialize();
+    return executor;
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+    taskRegistrar.setTaskScheduler(new LagRecordingTaskScheduler(maintenance, meterRegistry));
+  }
+
+  @Override
+  public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+    if (blocking != null) {
+      configurer.setExecutor(blocking);
+    }
+  }
+
+  /** The scheduler for work that may wait for the journal, the calling thread without it. */
+  @Bean
+  Scheduler roomBlockingScheduler() {
+    return blocking == null ? Schedulers.immediate() : Schedulers.fromExecutor(blocking);
+  }
+
+  @Override
+  public void destroy() {
+    switch (maintenance) {
+      case ThreadPoolTaskScheduler scheduler -> scheduler.shutdown();
+      case SimpleAsyncTaskScheduler scheduler -> scheduler.close();
+      default -> {}
+    }
+    switch (blocking) {
+      case ThreadPoolTaskExecutor executor -> executor.shutdown();
+      case SimpleAsyncTaskExecutor executor -> executor.close();
+      case null, default -> {}
+    }
+  }
+}
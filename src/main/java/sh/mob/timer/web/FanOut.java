@@ -0,0 +1,140 @@
+package sh.mob.timer.web;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.FluxSink.OverflowStrategy;
+
+/**
+ * Delivers the frames of one room to its subscribers, each at its own pace.
+ *
+ * <p>Every subscriber has a bounded queue of the frames it has not requested yet. When a new frame
+ * does not fit, an older emitted frame of the same event is conflated into it, since only the
+ * newest timer and goal state matter. Catch-up frames and frames that combine several events are
+ * never conflated; when nothing can be conflated, or the queue has been overflowing for longer than
+ * the slow subscriber timeout, the subscriber is disconnected instead of losing frames, so that one
+ * stalled client neither holds buffers nor holds back anybody else. Browsers reconnect on their own
+ * and resume from the last event they received.
+ *
+ * <p>Calls to {@link #emit(SseFrame)} and the catch-up of new subscribers are serialized by the
+ * lock passed to the constructor, so that every subscriber sees every frame after its catch-up
+ * exactly once.
+ */
+final class FanOut {
+
+  private final Object lock;
+  private final int queueSize;
+  private final long slowSubscriberTimeoutNanos;
+  private final RoomMetrics metrics;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  FanOut(Object lock, int queueSize, Duration slowSubscriberTimeout, RoomMetrics metrics) {
+    this.lock = lock;
+    this.queueSize = queueSize;
+    this.slowSubscriberTimeoutNanos = slowSubscriberTimeout.toNanos();
+    this.metrics = metrics;
+  }
+
+  /** Must be called while holding the lock. */
+  void emit(SseFrame frame) {
+    long now = System.nanoTime();
+    for (var subscriber : subscribers) {
+      subscriber.offer(frame, now);
+    }
+  }
+
+  /**
+   * Returns the frames of catchUp, taken while holding the lock, followed by every emitted frame.
+   */
+  Flux<SseFrame> subscribe(Supplier<List<SseFrame>> catchUp) {
+    return Flux.create(
+        sink -> {
+          var subscriber = new Subscriber(sink);
+          synchronized (lock) {
+            subscriber.catchUp(catchUp.get());
+            subscribers.add(subscriber);
+          }
+          sink.onRequest(requested -> subscriber.drain());
+          sink.onDispose(() -> subscribers.remove(subscriber));
+        },
+        OverflowStrategy.IGNORE);
+  }
+
+  private final class Subscriber {
+
+    private final FluxSink<SseFrame> sink;
+    private final ArrayDeque<SseFrame> queue = new ArrayDeque<>();
+    // the catch-up frames at the head of the queue, which are never conflated
+    private int catchUp;
+    private long overflowingSince;
+    private boolean overflowing;
+
+    Subscriber(FluxSink<SseFrame> sink) {
+      this.sink = sink;
+    }
+
+    synchronized void catchUp(List<SseFrame> frames) {
+      queue.addAll(frames);
+      catchUp = frames.size();
+    }
+
+    synchronized void offer(SseFrame frame, long now) {
+      if (queue.size() >= queueSize) {
+        if (!overflowing) {
+          overflowing = true;
+          overflowingSince = now;
+        } else if (now - overflowingSince > slowSubscriberTimeoutNanos) {
+          disconnect();
+          return;
+        }
+        if (!conflate(frame)) {
+          disconnect();
+          return;
+        }
+      }
+      queue.add(frame);
+      drain();
+    }
+
+    /** Removes an emitted frame of the same event as the given one, if there is one. */
+    private boolean conflate(SseFrame frame) {
+      if (frame.event() == null) {
+        return false;
+      }
+      int position = 0;
+      for (Iterator<SseFrame> queued = queue.iterator(); queued.hasNext(); position++) {
+        var next = queued.next();
+        if (position >= catchUp && frame.event().equals(next.event())) {
+          queued.remove();
+          metrics.eventConflated();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    synchronized void drain() {
+      while (!queue.isEmpty() && sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+        sink.next(queue.poll());
+        if (catchUp > 0) {
+          catchUp--;
+        }
+      }
+      if (queue.isEmpty()) {
+        overflowing = false;
+      }
+    }
+
+    private void disconnect() {
+      queue.clear();
+      subscribers.remove(this);
+      metrics.slowSubscriberDisconnected();
+      sink.complete();
+    }
+  }
+}
@@ -0,0 +1,572 @@
+package sh.mob.timer.web;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import sh.mob.timer.web.Room.Goal;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Journal of room events in append-only files.
+ *
+ * <p>Every line is a room name, a tab and the event as JSON. Events are handed to a single writer
+ * thread, which appends them in batches and forces each batch to disk once, so requests never wait
+ * for the disk. The writer periodically folds the journal into a compacted snapshot that only
+ * contains the rooms and timer requests that are still within the retention.
+ *
+ * <p>On startup only the snapshot and the journal written since the last compaction are scanned,
+ * to find where the lines of each room are. The lines themselves are parsed when a room is first
+ * accessed. Events that were handed over but not written yet are kept per room until they are, so
+ * a room that leaves memory and comes back right away still sees them.
+ *
+ * <p>Files are numbered by generation: {@code snapshot-<n>.log} contains everything written before
+ * {@code journal-<n>.log}.
+ */
+@Component
+@ConditionalOnProperty(name = "room.journal.enabled", havingValue = "true")
+public class FileRoomJournal implements RoomJournal, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(FileRoomJournal.class);
+
+  private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.log");
+  private static final Pattern JOURNAL = Pattern.compile("journal-(\\d+)\\.log");
+  private static final int MAX_BATCH_SIZE = 1_024;
+
+  private sealed interface Task {}
+
+  private record Append(String room, JournalRecord record) implements Task {}
+
+  /** Completes once all earlier tasks are done, after compacting first if a cutoff is given. */
+  private record Sync(Instant compactionCutoff, CompletableFuture<Void> done) implements Task {}
+
+  private record Extent(FileChannel channel, long offset, int length) {}
+
+  record JournalRecord(
+      TimerType type, Long timer, Instant requested, String user, String nextUser, String goal) {
+
+    static JournalRecord of(TimerRequest timerRequest) {
+      return new JournalRecord(
+          timerRequest.getType(),
+          timerRequest.getTimer(),
+          timerRequest.getRequested(),
+          timerRequest.getUser(),
+          timerRequest.getNextUser(),
+          null);
+    }
+
+    static JournalRecord of(Goal goal) {
+      return new JournalRecord(null, null, goal.requested(), goal.user(), null, goal.goal());
+    }
+
+    boolean isGoal() {
+      return type == null;
+    }
+
+    TimerRequest toTimerRequest() {
+      return new TimerRequest(timer, requested, user, nextUser, type);
+    }
+
+    Goal toGoal() {
+      return new Goal(goal, user, requested);
+    }
+  }
+
+  private final Path directory;
+  private final Duration retention;
+  private final Duration compactionInterval;
+  private final JsonMapper jsonMapper;
+
+  private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<String, List<Extent>> index = new ConcurrentHashMap<>();
+  private final Map<String, ArrayDeque<JournalRecord>> pending = new ConcurrentHashMap<>();
+  private final List<Path> obsoleteFiles = new ArrayList<>();
+  private final List<FileChannel> channels = new ArrayList<>();
+  private final Thread writer;
+
+  private long generation;
+  private FileChannel journal;
+  private long position;
+  private Instant nextCompaction;
+  private volatile boolean running = true;
+
+  public FileRoomJournal(
+      @Value("${room.journal.directory}") Path directory,
+      @Value("${room.history.retention}") Duration retention,
+      @Value("${room.journal.compaction-interval}") Duration compactionInterval,
+      JsonMapper jsonMapper)
+      throws IOException {
+    this.directory = directory;
+    this.retention = retention;
+    this.compactionInterval = compactionInterval;
+    this.jsonMapper = jsonMapper;
+    open();
+    this.nextCompaction = Instant.now().plus(compactionInterval);
+    this.writer = Thread.ofPlatform().name("room-journal").daemon().start(this::writeLoop);
+  }
+
+  @Override
+  public void timerRequestAdded(String room, TimerRequest timerRequest) {
+    append(room, JournalRecord.of(timerRequest));
+  }
+
+  @Override
+  public void goalChanged(String room, Goal goal) {
+    append(room, JournalRecord.of(goal));
+  }
+
+  private void append(String room, JournalRecord record) {
+    pending.compute(
+        room,
+        (name, records) -> {
+          var result = records == null ? new ArrayDeque<JournalRecord>() : records;
+          result.add(record);
+          return result;
+        });
+    queue.add(new Append(room, record));
+  }
+
+  @Override
+  public boolean contains(String room) {
+    return index.containsKey(room) || pending.containsKey(room);
+  }
+
+  @Override
+  public Optional<PersistedRoom> restore(String room, Instant cutoff) {
+    lock.readLock().lock();
+    try {
+      var extents = index.get(room);
+      var unwritten = pendingRecords(room);
+      if (extents == null && unwritten.isEmpty()) {
+        return Optional.empty();
+      }
+      var records = extents == null ? new ArrayList<JournalRecord>() : read(extents);
+      records.addAll(unwritten);
+      var history = new ArrayList<TimerRequest>();
+      Goal goal = null;
+      for (var record : records) {
+        if (record.isGoal()) {
+          goal = record.toGoal();
+        } else if (!record.requested().isBefore(cutoff)) {
+          history.add(record.toTimerRequest());
+        }
+      }
+      return Optional.of(new PersistedRoom(history, goal));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns a copy of the events of a room that were handed over but are not written yet. */
+  private List<JournalRecord> pendingRecords(String room) {
+    var result = new ArrayList<JournalRecord>();
+    pending.computeIfPresent(
+        room,
+        (name, records) -> {
+          result.addAll(records);
+          return records;
+        });
+    return result;
+  }
+
+  /** Blocks until all events handed to the journal so far are written. */
+  void flush() {
+    sync(null);
+  }
+
+  /** Blocks until all events handed to the journal so far are written and compacted. */
+  void compact(Instant cutoff) {
+    sync(cutoff);
+  }
+
+  private void sync(Instant compactionCutoff) {
+    var done = new CompletableFuture<Void>();
+    queue.add(new Sync(compactionCutoff, done));
+    done.join();
+  }
+
+  /** Writes all pending events and closes the files. */
+  @Override
+  public void destroy() throws InterruptedException, IOException {
+    running = false;
+    writer.join();
+    for (var channel : channels) {
+      channel.close();
+    }
+  }
+
+  private void open() throws IOException {
+    Files.createDirectories(directory);
+    var snapshots = listGenerations(SNAPSHOT);
+    var journals = listGenerations(JOURNAL);
+    generation = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+
+    for (var snapshot : snapshots.headMap(generation).values()) {
+      Files.delete(snapshot);
+    }
+    for (var journalFile : journals.headMap(generation).values()) {
+      Files.delete(journalFile);
+    }
+    if (!snapshots.isEmpty()) {
+      scan(openChannel(snapshots.get(generation)));
+      obsoleteFiles.add(snapshots.get(generation));
+    }
+    var tail = journals.tailMap(generation);
+    for (var journalFile : tail.values()) {
+      scan(openChannel(journalFile));
+    }
+    if (!tail.isEmpty()) {
+      generation = tail.lastKey();
+      obsoleteFiles.addAll(tail.headMap(generation).values());
+    }
+    var journalFile = directory.resolve("journal-" + generation + ".log");
+    journal = tail.isEmpty() ? openChannel(journalFile) : channels.get(channels.size() - 1);
+    obsoleteFiles.add(journalFile);
+    position = journal.size();
+    log.info("Opened room journal in {} with {} rooms", directory.toAbsolutePath(), index.size());
+  }
+
+  private TreeMap<Long, Path> listGenerations(Pattern pattern) throws IOException {
+    var result = new TreeMap<Long, Path>();
+    try (var files = Files.list(directory)) {
+      files.forEach(
+          file -> {
+            var matcher = pattern.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+              result.put(Long.parseLong(matcher.group(1)), file);
+            }
+          });
+    }
+    return result;
+  }
+
+  private FileChannel openChannel(Path file) throws IOException {
+    var channel = FileChannel.open(file, CREATE, READ, WRITE);
+    channels.add(channel);
+    return channel;
+  }
+
+  /**
+   * Indexes the lines of a file by room, merging consecutive lines of the same room into one
+   * extent. Lines without a room are skipped. A trailing line without a line break was torn by a
+   * crash and is cut off.
+   */
+  private void scan(FileChannel channel) throws IOException {
+    var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    String currentRoom = null;
+    int extentStart = 0;
+    int lineStart = 0;
+    int tab = -1;
+    for (int i = 0; i < buffer.limit(); i++) {
+      byte b = buffer.get(i);
+      if (b == '\t' && tab < lineStart) {
+        tab = i;
+      } else if (b == '\n') {
+        if (tab < lineStart) {
+          log.warn("Skipping a journal line without a room at byte {}", lineStart);
+          addExtent(currentRoom, channel, extentStart, lineStart);
+          currentRoom = null;
+        } else {
+          var room = asciiString(buffer, lineStart, tab);
+          if (!room.equals(currentRoom)) {
+            addExtent(currentRoom, channel, extentStart, lineStart);
+            currentRoom = room;
+            extentStart = lineStart;
+          }
+        }
+        lineStart = i + 1;
+      }
+    }
+    addExtent(currentRoom, channel, extentStart, lineStart);
+    if (lineStart < channel.size()) {
+      log.warn("Cutting off {} bytes of a torn journal line", channel.size() - lineStart);
+      channel.truncate(lineStart);
+    }
+  }
+
+  private void addExtent(String room, FileChannel channel, long start, long end) {
+    if (room != null && end > start) {
+      index
+          .computeIfAbsent(room, name -> new ArrayList<>())
+          .add(new Extent(channel, start, (int) (end - start)));
+    }
+  }
+
+  private static String asciiString(ByteBuffer buffer, int start, int end) {
+    var bytes = new byte[end - start];
+    buffer.get(start, bytes);
+    return new String(bytes, US_ASCII);
+  }
+
+  private List<JournalRecord> read(List<Extent> extents) {
+    var records = new ArrayList<JournalRecord>();
+    for (var extent : extents) {
+      var bytes = ByteBuffer.allocate(extent.length());
+      try {
+        while (bytes.hasRemaining()) {
+          extent.channel().read(bytes, extent.offset() + bytes.position());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      var array = bytes.array();
+      int lineStart = 0;
+      int tab = -1;
+      for (int i = 0; i < array.length; i++) {
+        if (array[i] == '\t' && tab < lineStart) {
+          tab = i;
+        } else if (array[i] == '\n') {
+          records.add(jsonMapper.readValue(array, tab + 1, i - tab - 1, JournalRecord.class));
+          lineStart = i + 1;
+        }
+      }
+    }
+    return records;
+  }
+
+  private void writeLoop() {
+    var batch = new ArrayList<Task>();
+    while (running || !queue.isEmpty()) {
+      try {
+        var first = queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+          process(batch);
+        }
+        if (running && !Instant.now().isBefore(nextCompaction)) {
+          compactNow(Instant.now().minus(retention));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException | IOException e) {
+        log.error("Could not write {} events to the room journal", batch.size(), e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes the appends of a batch up to each sync and completes the sync, or completes it
+   * exceptionally if the appends before it or its compaction failed.
+   */
+  private void process(List<Task> batch) throws IOException {
+    var appends = new ArrayList<Append>(batch.size());
+    for (var task : batch) {
+      switch (task) {
+        case Append append -> appends.add(append);
+        case Sync sync -> {
+          try {
+            write(appends);
+            if (sync.compactionCutoff() != null) {
+              compactNow(sync.compactionCutoff());
+            }
+            sync.done().complete(null);
+          } catch (RuntimeException | IOException e) {
+            sync.done().completeExceptionally(e);
+          } finally {
+            appends.clear();
+          }
+        }
+      }
+    }
+    write(appends);
+  }
+
+  /**
+   * Appends the lines to the journal and forces them to disk. If that fails, the journal is cut
+   * back to where the lines started and the events are dropped, also from the pending events, so
+   * that neither a partial line nor a stale pending event is left behind.
+   */
+  private void write(List<Append> appends) throws IOException {
+    if (appends.isEmpty()) {
+      return;
+    }
+    var extents = new ArrayList<Map.Entry<String, Extent>>(appends.size());
+    ByteBuffer buffer;
+    try {
+      var out = new ByteArrayOutputStream();
+      for (var append : appends) {
+        int start = out.size();
+        writeLine(out, append.room(), append.record());
+        extents.add(
+            Map.entry(append.room(), new Extent(journal, position + start, out.size() - start)));
+      }
+      buffer = ByteBuffer.wrap(out.toByteArray());
+      while (buffer.hasRemaining()) {
+        journal.write(buffer, position + buffer.position());
+      }
+      journal.force(false);
+    } catch (RuntimeException | IOException e) {
+      lock.writeLock().lock();
+      try {
+        appends.forEach(append -> handledPending(append.room()));
+      } finally {
+        lock.writeLock().unlock();
+      }
+      try {
+        journal.truncate(position);
+      } catch (IOException truncateFailure) {
+        e.addSuppressed(truncateFailure);
+      }
+      throw e;
+    }
+    position += buffer.limit();
+
+    lock.writeLock().lock();
+    try {
+      for (var extent : extents) {
+        index.computeIfAbsent(extent.getKey(), room -> new ArrayList<>()).add(extent.getValue());
+        handledPending(extent.getKey());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the oldest pending event of a room. The events of a room are written in the order they
+   * were handed over, so that is the one just written or dropped.
+   */
+  private void handledPending(String room) {
+    pending.computeIfPresent(
+        room,
+        (name, records) -> {
+          records.poll();
+          return records.isEmpty() ? null : records;
+        });
+  }
+
+  private void writeLine(ByteArrayOutputStream out, String room, JournalRecord record) {
+    out.writeBytes(room.getBytes(US_ASCII));
+    out.write('\t');
+    out.writeBytes(jsonMapper.writeValueAsBytes(record));
+    out.write('\n');
+  }
+
+  /**
+   * Folds all indexed lines into a new snapshot and starts a new journal. Rooms without timer
+   * requests or goal changes since cutoff are dropped; for the others, the latest goal is kept.
+   *
+   * <p>Only the writer thread changes the files and the index, so the snapshot is read and written
+   * without the lock. Restoring rooms only waits while the index and the files are swapped.
+   */
+  private void compactNow(Instant cutoff) throws IOException {
+    var started = System.nanoTime();
+    var next = generation + 1;
+    var snapshotFile = directory.resolve("snapshot-" + next + ".log");
+    var temporaryFile = directory.resolve("snapshot-" + next + ".tmp");
+    var newIndex = new LinkedHashMap<String, Extent>();
+    // each room is written as soon as it is folded, only one room at a time is held in memory
+    try (var snapshot = FileChannel.open(temporaryFile, CREATE, TRUNCATE_EXISTING, WRITE)) {
+      var out = new ByteArrayOutputStream();
+      long offset = 0;
+      for (var room : index.entrySet()) {
+        var records = read(room.getValue());
+        JournalRecord goal = null;
+        var kept = new ArrayList<JournalRecord>();
+        boolean active = false;
+        for (var record : records) {
+          boolean recent = record.requested() != null && !record.requested().isBefore(cutoff);
+          if (record.isGoal()) {
+            goal = record;
+            active |= recent;
+          } else if (recent) {
+            kept.add(record);
+            active = true;
+          }
+        }
+        if (!active) {
+          continue;
+        }
+        if (goal != null) {
+          kept.add(goal);
+        }
+        out.reset();
+        for (var record : kept) {
+          writeLine(out, room.getKey(), record);
+        }
+        var buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+          snapshot.write(buffer, offset + buffer.position());
+        }
+        newIndex.put(room.getKey(), new Extent(null, offset, buffer.limit()));
+        offset += buffer.limit();
+      }
+      snapshot.force(true);
+    }
+    Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+    var journalFile = directory.resolve("journal-" + next + ".log");
+
+    lock.writeLock().lock();
+    try {
+      for (var channel : channels) {
+        channel.close();
+      }
+      channels.clear();
+      for (var file : obsoleteFiles) {
+        Files.deleteIfExists(file);
+      }
+      obsoleteFiles.clear();
+
+      var snapshot = openChannel(snapshotFile);
+      // replaced room by room instead of cleared, so that contains never misses a kept room
+      index.keySet().retainAll(newIndex.keySet());
+      newIndex.forEach(
+          (room, extent) ->
+              index.put(
+                  room,
+                  new ArrayList<>(List.of(new Extent(snapshot, extent.offset(), extent.length())))));
+      journal = openChannel(journalFile);
+      position = 0;
+      generation = next;
+      nextCompaction = Instant.now().plus(compactionInterval);
+      obsoleteFiles.add(snapshotFile);
+      obsoleteFiles.add(journalFile);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    log.info(
+        "Compacted room journal to {} rooms in {} ms",
+        index.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+  }
+}
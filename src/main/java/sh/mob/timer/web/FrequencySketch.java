@@ -0,0 +1,69 @@
+package sh.mob.timer.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate access counts of room names in a count-min sketch, as used by TinyLFU.
+ *
+ * <p>Each name maps to one counter in each of four rows and its frequency is the smallest of these
+ * counters. Counters saturate at 15 and are all halved once the number of increments reaches ten
+ * times the width, so that rooms that were popular long ago age out. Concurrent increments may be
+ * lost; the counts are estimates anyway.
+ */
+final class FrequencySketch {
+
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+  private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+  private final byte[][] rows;
+  private final int mask;
+  private final int sampleSize;
+  private final AtomicInteger increments = new AtomicInteger();
+
+  FrequencySketch(int expectedEntries) {
+    int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1)) << 1;
+    this.rows = new byte[DEPTH][width];
+    this.mask = width - 1;
+    this.sampleSize = 10 * width;
+  }
+
+  void increment(String key) {
+    int hash = key.hashCode();
+    for (int row = 0; row < DEPTH; row++) {
+      int index = index(hash, row);
+      if (rows[row][index] < MAX_COUNT) {
+        rows[row][index]++;
+      }
+    }
+    if (increments.incrementAndGet() >= sampleSize) {
+      reset();
+    }
+  }
+
+  int frequency(String key) {
+    int hash = key.hashCode();
+    int frequency = MAX_COUNT;
+    for (int row = 0; row < DEPTH; row++) {
+      frequency = Math.min(frequency, rows[row][index(hash, row)]);
+    }
+    return frequency;
+  }
+
+  private int index(int hash, int row) {
+    int h = hash * SEEDS[row];
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private synchronized void reset() {
+    if (increments.get() < sampleSize) {
+      return;
+    }
+    for (var row : rows) {
+      for (int i = 0; i < row.length; i++) {
+        row[i] >>= 1;
+      }
+    }
+    increments.set(0);
+  }
+}
@@ -0,0 +1,60 @@
+package sh.mob.timer.web;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Assigns room names to nodes by consistent hashing.
+ *
+ * <p>Every node is placed on the ring at a number of virtual positions, and a room belongs to the
+ * node at the first position at or after the hash of its name. Adding or removing a node therefore
+ * only moves the rooms between it and its neighbours. Hashes are derived from {@link
+ * String#hashCode()}, which is the same on every JVM, so all nodes agree on the owners.
+ */
+final class HashRing {
+
+  private final int[] positions;
+  private final String[] owners;
+
+  HashRing(Collection<String> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("A hash ring needs at least one node");
+    }
+    var entries = new long[nodes.size() * virtualNodes];
+    var nodeIds = nodes.toArray(String[]::new);
+    int i = 0;
+    for (int node = 0; node < nodeIds.length; node++) {
+      for (int replica = 0; replica < virtualNodes; replica++) {
+        int position = hash(nodeIds[node] + "#" + replica);
+        // sort by position, keep the node index in the lower bits
+        entries[i++] = ((long) position << 32) | node;
+      }
+    }
+    Arrays.sort(entries);
+    this.positions = new int[entries.length];
+    this.owners = new String[entries.length];
+    for (i = 0; i < entries.length; i++) {
+      positions[i] = (int) (entries[i] >> 32);
+      owners[i] = nodeIds[(int) entries[i]];
+    }
+  }
+
+  String owner(String room) {
+    int index = Arrays.binarySearch(positions, hash(room));
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return owners[index == positions.length ? 0 : index];
+  }
+
+  private static int hash(String key) {
+    // finalizer of MurmurHash3, spreads similar names over the whole ring
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -1,31 +1,40 @@
 package sh.mob.timer.web;
 
+import java.util.Map;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.thymeleaf.ITemplateEngine;
 
 @Controller
 @RequestMapping({"/", ""})
 public class IndexController {
 
   private final RoomRepository roomRepository;
-  private final String url;
+  private final PrerenderedPage page;
 
-  public IndexController(RoomRepository roomRepository, @Value("${url}") String url) {
+  public IndexController(
+      RoomRepository roomRepository,
+      ITemplateEngine templateEngine,
+      @Value("${url}") String url,
+      @Value("${spring.thymeleaf.cache:true}") boolean cache) {
     this.roomRepository = roomRepository;
-    this.url = url;
+    // the live numbers are loaded by the page itself, only the suggested room name changes
+    this.page =
+        new PrerenderedPage(
+            templateEngine,
+            "index",
+            Map.of("url", url, "randomRoomName", PrerenderedPage.PLACEHOLDER),
+            cache);
   }
 
   @GetMapping
-  public String index(Model model) {
-    model.addAttribute("numberOfConnections", roomRepository.countConnections());
-    model.addAttribute("url", url);
-    model.addAttribute("randomRoomName", roomRepository.newRandomRoomName());
-    return "index";
+  public ResponseEntity<byte[]> index() {
+    return page.render(roomRepository.newRandomRoomName());
   }
 
   @PostMapping
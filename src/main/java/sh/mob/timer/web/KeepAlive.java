@@ -0,0 +1,31 @@
+package sh.mob.timer.web;
+
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import sh.mob.timer.web.Room.TimerRequest;
+
+/**
+ * One heartbeat for all event streams.
+ *
+ * <p>Instead of an interval per connection, every stream subscribes to the same hot flux, which
+ * runs as long as at least one stream is open and emits the same pre-encoded keep alive frame on
+ * every tick.
+ */
+@Component
+public class KeepAlive {
+
+  private final Flux<SseFrame> frames;
+
+  public KeepAlive(
+      SseFrameEncoder encoder, @Value("${room.events.keep-alive}") Duration interval) {
+    var keepAlive = encoder.encode("KEEP_ALIVE", new TimerRequest(null, null, null, null, null));
+    this.frames = Flux.interval(interval).map(tick -> keepAlive).share();
+  }
+
+  /** A stream that cannot keep up skips ticks instead of holding back all the others. */
+  Flux<SseFrame> frames() {
+    return frames.onBackpressureDrop();
+  }
+}
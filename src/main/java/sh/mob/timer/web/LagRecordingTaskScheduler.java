@@ -0,0 +1,122 @@
+package sh.mob.timer.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+
+/**
+ * Records how late the periodic jobs of a task scheduler start, as {@code timer.scheduler.lag}
+ * tagged with the job, e.g. {@code RoomRepository.cleanUpUnusedRooms}.
+ *
+ * <p>The lag of a run is how much later it started than the previous run plus the period, or than
+ * the end of the previous run plus the delay for fixed delay jobs. A run that waited for a busy
+ * thread or a slow job before it shows up as lag; a run that catches up on its schedule does not.
+ */
+final class LagRecordingTaskScheduler implements TaskScheduler {
+
+  private final TaskScheduler delegate;
+  private final MeterRegistry meterRegistry;
+
+  LagRecordingTaskScheduler(TaskScheduler delegate, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Clock getClock() {
+    return delegate.getClock();
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+    return delegate.schedule(task, trigger);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable task, Instant startTime) {
+    return delegate.schedule(task, startTime);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Instant startTime, Duration period) {
+    return delegate.scheduleAtFixedRate(recording(task, period, false), startTime, period);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Duration period) {
+    return delegate.scheduleAtFixedRate(recording(task, period, false), period);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(
+      Runnable task, Instant startTime, Duration delay) {
+    return delegate.scheduleWithFixedDelay(recording(task, delay, true), startTime, delay);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Duration delay) {
+    return delegate.scheduleWithFixedDelay(recording(task, delay, true), delay);
+  }
+
+  private Runnable recording(Runnable task, Duration interval, boolean fromEnd) {
+    var lag =
+        Timer.builder("timer.scheduler.lag")
+            .description("How much later than planned a periodic job started")
+            .tag("job", jobName(task))
+            .register(meterRegistry);
+    return new LagRecordingTask(task, interval.toNanos(), fromEnd, lag);
+  }
+
+  /** Returns the class and method of a scheduled method, the string of any other task. */
+  static String jobName(Runnable task) {
+    var name = task.toString();
+    int method = name.lastIndexOf('.');
+    int type = method > 0 ? name.lastIndexOf('.', method - 1) : -1;
+    return name.substring(type + 1);
+  }
+
+  private static final class LagRecordingTask implements Runnable {
+
+    private final Runnable task;
+    private final long intervalNanos;
+    private final boolean fromEnd;
+    private final Timer lag;
+    private volatile long previous;
+    private volatile boolean started;
+
+    LagRecordingTask(Runnable task, long intervalNanos, boolean fromEnd, Timer lag) {
+      this.task = task;
+      this.intervalNanos = intervalNanos;
+      this.fromEnd = fromEnd;
+      this.lag = lag;
+    }
+
+    @Override
+    public void run() {
+      long start = System.nanoTime();
+      if (started) {
+        lag.record(Math.max(0, start - previous - intervalNanos), TimeUnit.NANOSECONDS);
+      }
+      started = true;
+      previous = start;
+      try {
+        task.run();
+      } finally {
+        if (fromEnd) {
+          previous = System.nanoTime();
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return task.toString();
+    }
+  }
+}
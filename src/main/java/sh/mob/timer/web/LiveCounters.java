@@ -0,0 +1,50 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts open event stream connections and rooms with a running timer across all rooms.
+ *
+ * <p>Rooms report changes as they happen, so reading the counts does not need to look at any room.
+ * Running timers are scheduled at the instant they end and counted down by {@link
+ * #expireTimers(Instant)}.
+ */
+final class LiveCounters {
+
+  private final AtomicLong connections = new AtomicLong();
+  private final AtomicLong activeTimers = new AtomicLong();
+  private final DeadlineQueue<Room> timerEnds = new DeadlineQueue<>();
+
+  long connections() {
+    return connections.get();
+  }
+
+  long activeTimers() {
+    return activeTimers.get();
+  }
+
+  void connectionOpened() {
+    connections.incrementAndGet();
+  }
+
+  void connectionClosed() {
+    connections.decrementAndGet();
+  }
+
+  void timerStarted(Room room, Instant end) {
+    timerEnds.schedule(room, end);
+  }
+
+  void timerActivated() {
+    activeTimers.incrementAndGet();
+  }
+
+  void timerDeactivated() {
+    activeTimers.decrementAndGet();
+  }
+
+  void expireTimers(Instant now) {
+    timerEnds.pollExpired(now, (room, end) -> room.expireTimer(now));
+  }
+}
@@ -0,0 +1,42 @@
+package sh.mob.timer.web;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Connects nodes that run in the same JVM by calling them directly.
+ *
+ * <p>The nodes are shared by all instances of this class, so nodes created in one JVM form a
+ * cluster. There is no network transport: nodes in other processes are never reachable, and a node
+ * whose {@code cluster.nodes} names them refuses to start, see {@link Cluster#checkReachable()}.
+ * Meant for tests, which wire their nodes by hand.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.bus", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackRoomBus implements RoomBus {
+
+  private static final Map<String, RoomNode> NODES = new ConcurrentHashMap<>();
+
+  @Override
+  public void join(String nodeId, RoomNode node) {
+    if (NODES.putIfAbsent(nodeId, node) != null) {
+      throw new IllegalStateException("Node " + nodeId + " already joined");
+    }
+  }
+
+  @Override
+  public void leave(String nodeId) {
+    NODES.remove(nodeId);
+  }
+
+  @Override
+  public RoomNode node(String nodeId) {
+    var node = NODES.get(nodeId);
+    if (node == null) {
+      throw new IllegalStateException("Node " + nodeId + " is not reachable");
+    }
+    return node;
+  }
+}
@@ -0,0 +1,87 @@
+package sh.mob.timer.web;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+/**
+ * A Thymeleaf template rendered once, with a placeholder where its only dynamic value goes.
+ *
+ * <p>Serving the page copies the prerendered parts around the value instead of processing the
+ * template again. The value is restricted to the characters of room names, which no HTML,
+ * attribute or JavaScript context escapes, so the result equals what the template would render for
+ * it. With {@code spring.thymeleaf.cache=false}, as during development, the template is rendered on
+ * every request instead, so changes to it show up without a restart.
+ */
+final class PrerenderedPage {
+
+  /** The value to pass to the template in place of the dynamic value. */
+  static final String PLACEHOLDER = "prerendered-page-placeholder";
+
+  private final ITemplateEngine templateEngine;
+  private final String template;
+  private final Map<String, Object> variables;
+  private final byte[][] parts;
+
+  PrerenderedPage(
+      ITemplateEngine templateEngine,
+      String template,
+      Map<String, Object> variables,
+      boolean cache) {
+    this.templateEngine = templateEngine;
+    this.template = template;
+    this.variables = variables;
+    this.parts = cache ? split(renderTemplate()) : null;
+  }
+
+  /** Returns the page as a response, with value in place of the placeholder. */
+  ResponseEntity<byte[]> render(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!(Character.isLetterOrDigit(c) && c < 128) && c != '-' && c != '_') {
+        throw new IllegalArgumentException("value must be a room name, but was " + value);
+      }
+    }
+    var body =
+        parts == null
+            ? renderTemplate().replace(PLACEHOLDER, value).getBytes(StandardCharsets.UTF_8)
+            : join(value.getBytes(StandardCharsets.UTF_8));
+    return ResponseEntity.ok().contentType(MediaType.TEXT_HTML).body(body);
+  }
+
+  private String renderTemplate() {
+    return templateEngine.process(template, new Context(null, variables));
+  }
+
+  private byte[] join(byte[] value) {
+    int length = value.length * (parts.length - 1);
+    for (byte[] part : parts) {
+      length += part.length;
+    }
+    var out = new ByteArrayOutputStream(length);
+    out.writeBytes(parts[0]);
+    for (int i = 1; i < parts.length; i++) {
+      out.writeBytes(value);
+      out.writeBytes(parts[i]);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[][] split(String html) {
+    var parts = new ArrayList<byte[]>();
+    int start = 0;
+    int end;
+    while ((end = html.indexOf(PLACEHOLDER, start)) >= 0) {
+      parts.add(html.substring(start, end).getBytes(StandardCharsets.UTF_8));
+      start = end + PLACEHOLDER.length();
+    }
+    parts.add(html.substring(start).getBytes(StandardCharsets.UTF_8));
+    return parts.toArray(byte[][]::new);
+  }
+}
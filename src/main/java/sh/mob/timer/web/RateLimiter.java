@@ -0,0 +1,85 @@
+package sh.mob.timer.web;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets for many keys, e.g. clients or rooms, in a fixed amount of memory.
+ *
+ * <p>Each bucket is a single long, the time at which it will be full again, as in the generic cell
+ * rate algorithm: a request is allowed if that time is at most {@code burst} requests ahead of now,
+ * and moves it one request further. Buckets are updated with compare-and-set, without locks.
+ *
+ * <p>Keys are hashed into a table of fixed size instead of being stored, so the limiter never grows
+ * and never needs to forget old keys. Two keys that share a slot share a bucket, which can only make
+ * the limit stricter for them, never looser.
+ */
+final class RateLimiter {
+
+  private final long origin = System.nanoTime();
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final AtomicLongArray fullAt;
+  private final int mask;
+
+  /**
+   * Creates a limiter of {@code perSecond} requests per second with bursts of up to {@code burst}
+   * requests, or a limiter that allows everything for a rate of 0.
+   */
+  RateLimiter(double perSecond, int burst, int tableSize) {
+    if (tableSize <= 0 || Integer.bitCount(tableSize) != 1) {
+      throw new IllegalArgumentException("tableSize must be a power of two, but was " + tableSize);
+    }
+    this.intervalNanos = perSecond > 0 ? Math.round(1_000_000_000 / perSecond) : 0;
+    this.toleranceNanos = intervalNanos * Math.max(burst - 1, 0);
+    this.fullAt = new AtomicLongArray(perSecond > 0 ? tableSize : 0);
+    this.mask = tableSize - 1;
+  }
+
+  /**
+   * Takes a token from the bucket of the key if it has one and returns 0, or returns how many
+   * nanoseconds it takes until the bucket has a token again. The time is a {@link
+   * System#nanoTime()}.
+   */
+  long tryAcquire(int keyHash, long nanoTime) {
+    return tryAcquire(keyHash, 1, nanoTime);
+  }
+
+  /**
+   * Like {@link #tryAcquire(int, long)}, but takes {@code permits} tokens. A bucket with at least
+   * one token but fewer than {@code permits} goes into debt, so that a large request is allowed
+   * once and then holds back the next ones until its tokens are refilled.
+   */
+  long tryAcquire(int keyHash, int permits, long nanoTime) {
+    if (intervalNanos == 0) {
+      return 0;
+    }
+    int slot = slot(keyHash);
+    // relative to the creation of this limiter, so that empty slots are buckets that were full
+    long now = nanoTime - origin;
+    while (true) {
+      long current = fullAt.get(slot);
+      long start = Math.max(current, now);
+      long wait = start - now - toleranceNanos;
+      if (wait > 0) {
+        return wait;
+      }
+      if (fullAt.compareAndSet(slot, current, start + permits * intervalNanos)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Gives back tokens taken for a request that was rejected after all. A bucket never holds more
+   * than {@code burst} tokens, so giving back tokens that were refilled meanwhile is harmless.
+   */
+  void release(int keyHash, int permits) {
+    if (intervalNanos != 0) {
+      fullAt.addAndGet(slot(keyHash), -permits * intervalNanos);
+    }
+  }
+
+  private int slot(int keyHash) {
+    return (keyHash ^ (keyHash >>> 16)) & mask;
+  }
+}
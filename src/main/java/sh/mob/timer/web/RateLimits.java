@@ -0,0 +1,100 @@
+package sh.mob.timer.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The token buckets of clients and rooms, shared by the {@link AdmissionFilter}, the batch endpoint
+ * and WebSocket commands, so that a change costs the same tokens however it arrives.
+ *
+ * <p>Every client has a bucket for changes, batches and new connections, and every room has one
+ * for changes, from which every operation of a batch takes a token. A change is only charged if
+ * both buckets have a token, so a client that keeps changing a throttled room keeps its budget for
+ * all other rooms. Clients are told apart by their remote address; behind a proxy, {@code
+ * server.forward-headers-strategy} makes that the address of the actual client. A rate of 0
+ * disables a limit.
+ */
+@Component
+public class RateLimits {
+
+  private final RateLimiter clients;
+  private final RateLimiter rooms;
+  private final Counter clientRejections;
+  private final Counter roomRejections;
+
+  public RateLimits(
+      @Value("${room.limits.client-requests-per-second}") double clientRequestsPerSecond,
+      @Value("${room.limits.client-burst}") int clientBurst,
+      @Value("${room.limits.room-requests-per-second}") double roomRequestsPerSecond,
+      @Value("${room.limits.room-burst}") int roomBurst,
+      @Value("${room.limits.table-size}") int tableSize,
+      MeterRegistry meterRegistry) {
+    this.clients = new RateLimiter(clientRequestsPerSecond, clientBurst, tableSize);
+    this.rooms = new RateLimiter(roomRequestsPerSecond, roomBurst, tableSize);
+    this.clientRejections = AdmissionFilter.rejections("client", meterRegistry);
+    this.roomRejections = AdmissionFilter.rejections("room", meterRegistry);
+  }
+
+  /**
+   * Takes a token of the client and returns 0, or returns how many nanoseconds the client has to
+   * wait. The time is a {@link System#nanoTime()}.
+   */
+  long tryAcquireClient(InetSocketAddress client, long nanoTime) {
+    long wait = clients.tryAcquire(keyOf(client), nanoTime);
+    if (wait > 0) {
+      clientRejections.increment();
+    }
+    return wait;
+  }
+
+  /** Takes a token of the client and one of the room for a change, or none if either has none. */
+  long tryAcquireChange(InetSocketAddress client, String room, long nanoTime) {
+    long wait = tryAcquireClient(client, nanoTime);
+    if (wait > 0) {
+      return wait;
+    }
+    wait = rooms.tryAcquire(room.hashCode(), nanoTime);
+    if (wait > 0) {
+      clients.release(keyOf(client), 1);
+      roomRejections.increment();
+    }
+    return wait;
+  }
+
+  /**
+   * Takes a token per operation from the bucket of every room of a batch, or none if one of the
+   * rooms has none. The client paid for the batch when it was admitted, and gets its token back if
+   * a room rejects it.
+   */
+  long tryAcquireBatch(
+      InetSocketAddress client, Map<String, Integer> operationsByRoom, long nanoTime) {
+    var charged = new ArrayList<Map.Entry<String, Integer>>(operationsByRoom.size());
+    for (var room : operationsByRoom.entrySet()) {
+      long wait = rooms.tryAcquire(room.getKey().hashCode(), room.getValue(), nanoTime);
+      if (wait > 0) {
+        for (var chargedRoom : charged) {
+          rooms.release(chargedRoom.getKey().hashCode(), chargedRoom.getValue());
+        }
+        clients.release(keyOf(client), 1);
+        roomRejections.increment();
+        return wait;
+      }
+      charged.add(room);
+    }
+    return 0;
+  }
+
+  private static int keyOf(InetSocketAddress client) {
+    return client == null || client.getAddress() == null ? 0 : client.getAddress().hashCode();
+  }
+
+  /** Returns the value of a {@code Retry-After} header for a wait of the given nanoseconds. */
+  static String retryAfter(long waitNanos) {
+    return Long.toString(Math.max(1, (waitNanos + 999_999_999) / 1_000_000_000));
+  }
+}
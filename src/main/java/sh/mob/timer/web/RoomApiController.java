@@ -1,144 +1,306 @@
 package sh.mob.timer.web;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.Clock;
-import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Objects;
+import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
-import sh.mob.timer.web.Room.TimerRequest;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @RestController
 @RequestMapping()
 public class RoomApiController {
 
   private static final Logger log = LoggerFactory.getLogger(RoomApiController.class);
+  private static final Pattern ROOM_ID = Pattern.compile("[A-Za-z0-9-_]+");
   private final RoomRepository roomRepository;
   private final Clock clock;
   private final Stats stats;
+  private final KeepAlive keepAlive;
+  private final SseFrameEncoder encoder;
+  private final Scheduler blockingScheduler;
+  private final RateLimits rateLimits;
+  private final ChangeDuration putTimerDuration;
+  private final ChangeDuration putBreaktimerDuration;
+  private final ChangeDuration putGoalDuration;
+  private final ChangeDuration deleteGoalDuration;
+  private final ChangeDuration batchDuration;
 
-  public RoomApiController(RoomRepository roomRepository, Clock clock, Stats stats) {
+  public RoomApiController(
+      RoomRepository roomRepository,
+      Clock clock,
+      Stats stats,
+      KeepAlive keepAlive,
+      SseFrameEncoder encoder,
+      Scheduler blockingScheduler,
+      RateLimits rateLimits,
+      MeterRegistry meterRegistry) {
     this.roomRepository = roomRepository;
     this.clock = clock;
     this.stats = stats;
+    this.keepAlive = keepAlive;
+    this.encoder = encoder;
+    this.blockingScheduler = blockingScheduler;
+    this.rateLimits = rateLimits;
+    this.putTimerDuration = new ChangeDuration("timer", meterRegistry);
+    this.putBreaktimerDuration = new ChangeDuration("breaktimer", meterRegistry);
+    this.putGoalDuration = new ChangeDuration("goal", meterRegistry);
+    this.deleteGoalDuration = new ChangeDuration("deletegoal", meterRegistry);
+    this.batchDuration = new ChangeDuration("batch", meterRegistry);
+  }
+
+  /**
+   * The duration of the requests that change rooms in one way, recorded however they end: {@code
+   * success}, {@code error} or {@code cancelled}.
+   */
+  private static final class ChangeDuration {
+
+    private final Timer success;
+    private final Timer error;
+    private final Timer cancelled;
+
+    ChangeDuration(String type, MeterRegistry meterRegistry) {
+      this.success = timer(type, "success", meterRegistry);
+      this.error = timer(type, "error", meterRegistry);
+      this.cancelled = timer(type, "cancelled", meterRegistry);
+    }
+
+    private static Timer timer(String type, String outcome, MeterRegistry meterRegistry) {
+      return Timer.builder("timer.requests.put")
+          .description("Duration of requests that change rooms, by what they change and outcome")
+          .tag("type", type)
+          .tag("outcome", outcome)
+          .publishPercentiles(0.5, 0.99)
+          .register(meterRegistry);
+    }
+
+    <T> Mono<T> record(Mono<T> change, long started) {
+      return change.doFinally(
+          signal -> {
+            var timer =
+                switch (signal) {
+                  case ON_COMPLETE -> success;
+                  case ON_ERROR -> error;
+                  default -> cancelled;
+                };
+            timer.record(System.nanoTime() - started, NANOSECONDS);
+          });
+    }
   }
 
   @GetMapping
   @RequestMapping(
       value = "/{roomId:[A-Za-z0-9-_]+}/events",
       produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-  public Flux<ServerSentEvent<Object>> getEventStream(
-      @PathVariable String roomId, ServerHttpResponse response) {
+  public Flux<DataBuffer> getEventStream(
+      @PathVariable String roomId,
+      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+      @RequestParam(value = "encoding", required = false) String encoding,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      ServerHttpResponse response) {
     response
         .getHeaders()
         .setCacheControl("no-store, no-cache, must-revalidate, proxy-revalidate, max-age=0");
     response.getHeaders().add("X-Accel-Buffering", "no");
     response.getHeaders().setConnection("keep-alive");
-    var room = roomRepository.get(roomId);
-
-    var timerRequestFlux =
-        room.timerRequestSink()
-            .asFlux()
-            .map(
-                timerRequest ->
-                    ServerSentEvent.builder().event("TIMER_REQUEST").data(timerRequest).build());
-    var goalRequestFlux =
-        room.goalRequestSink()
-            .asFlux()
-            .map(
-                goalRequest ->
-                    ServerSentEvent.builder().event("GOAL_REQUEST").data(goalRequest).build());
-    var keepAliveFlux =
-        Flux.interval(Duration.ofSeconds(5L))
-            .map(
-                second ->
-                    ServerSentEvent.builder()
-                        .event("KEEP_ALIVE")
-                        .data(new TimerRequest(null, null, null, null, null))
-                        .build());
-    var initialHistory =
-        Flux.just(room.historyWithoutLatest())
-            .map(list -> ServerSentEvent.builder().event("INITIAL_HISTORY").data(list).build());
-
-    return Flux.concat(initialHistory, keepAliveFlux.mergeWith(timerRequestFlux).mergeWith(goalRequestFlux));
+    var bufferFactory = response.bufferFactory();
+    var compact = isCompact(encoding, accept);
+    return roomRepository
+        .ownerOf(roomId)
+        .frames(roomId, lastEventId)
+        .subscribeOn(blockingScheduler)
+        .mergeWith(keepAlive.frames())
+        .map(compact ? encoder::compact : frame -> frame)
+        .map(frame -> frame.toDataBuffer(bufferFactory));
+  }
+
+  /**
+   * Clients opt into {@link CompactEncoding} with {@code ?encoding=compact} or, where they can set
+   * headers, with {@code Accept: text/event-stream;encoding=compact}. JSON stays the default.
+   */
+  private static boolean isCompact(String encoding, String accept) {
+    if (encoding != null) {
+      return encoding.equals("compact");
+    }
+    return accept != null
+        && MediaType.parseMediaTypes(accept).stream()
+            .anyMatch(mediaType -> "compact".equals(mediaType.getParameter("encoding")));
   }
 
   @PutMapping("/{roomId:[A-Za-z0-9-_]+}")
   @ResponseStatus(HttpStatus.ACCEPTED)
-  public void publishEvent(@PathVariable String roomId, @RequestBody PutTimerRequest timerRequest) {
-    var room = roomRepository.get(roomId);
+  public Mono<Void> publishEvent(
+      @PathVariable String roomId, @RequestBody PutTimerRequest timerRequest) {
+    long started = System.nanoTime();
+    var owner = roomRepository.ownerOf(roomId);
     if (timerRequest.timer() != null) {
       long timer = truncateTooLongTimers(timerRequest.timer());
-      room.addTimer(
-          timer, timerRequest.user(), Instant.now(clock));
-      log.info(
-          "Add timer {} by user {} for room {}",
-          timerRequest.timer,
-          timerRequest.user,
-          room.name());
-      stats.incrementTimer(room.name(), timer);
+      var change = owner.addTimer(roomId, timer, timerRequest.user(), Instant.now(clock));
+      return putTimerDuration.record(change, started)
+          .doOnSuccess(
+              applied -> {
+                log.info(
+                    "Add timer {} by user {} for room {}",
+                    timerRequest.timer,
+                    timerRequest.user,
+                    roomId);
+                stats.incrementTimer(roomId, timer);
+              });
     } else if (timerRequest.breaktimer() != null) {
       long breaktimer = truncateTooLongTimers(timerRequest.breaktimer());
-      room.addBreaktimer(breaktimer, timerRequest.user());
-      log.info(
-          "Add break timer {} by user {} for room {}",
-          timerRequest.breaktimer(),
-          timerRequest.user,
-          room.name());
-      stats.incrementBreaktimer(room.name(), breaktimer);
-    } else {
-      log.warn("Could not understand PUT request for room {}", roomId);
+      var change = owner.addBreaktimer(roomId, breaktimer, timerRequest.user());
+      return putBreaktimerDuration.record(change, started)
+          .doOnSuccess(
+              applied -> {
+                log.info(
+                    "Add break timer {} by user {} for room {}",
+                    timerRequest.breaktimer(),
+                    timerRequest.user,
+                    roomId);
+                stats.incrementBreaktimer(roomId, breaktimer);
+              });
     }
+    log.warn("Could not understand PUT request for room {}", roomId);
+    return Mono.empty();
   }
 
   @PutMapping("/{roomId:[A-Za-z0-9-_]+}/goal")
   @ResponseStatus(HttpStatus.ACCEPTED)
-  public void putGoal(@PathVariable String roomId, @RequestBody PutGoalRequest goalRequest) {
-    var room = roomRepository.get(roomId);
+  public Mono<Void> putGoal(@PathVariable String roomId, @RequestBody PutGoalRequest goalRequest) {
+    long started = System.nanoTime();
+    var owner = roomRepository.ownerOf(roomId);
     if (goalRequest.goal() != null) {
       String goal = truncateTooLongGoal(goalRequest.goal());
-      room.setGoal(
-              goal, goalRequest.user(), Instant.now(clock));
-      log.info(
-              "Add goal \"{}\" by user {} for room {}",
-              goalRequest.goal(),
-              goalRequest.user(),
-              room.name());
-      stats.incrementGoalCount(room.name());
-    } else {
-      log.warn("Could not understand PUT goal request for room {}", roomId);
+      var change = owner.setGoal(roomId, goal, goalRequest.user(), Instant.now(clock));
+      return putGoalDuration.record(change, started)
+          .doOnSuccess(
+              applied -> {
+                log.info(
+                    "Add goal \"{}\" by user {} for room {}",
+                    goalRequest.goal(),
+                    goalRequest.user(),
+                    roomId);
+                stats.incrementGoalCount(roomId);
+              });
     }
+    log.warn("Could not understand PUT goal request for room {}", roomId);
+    return Mono.empty();
+  }
+
+  /**
+   * Applies many timer and goal requests at once, for bots and scripts. Each room applies its
+   * operations in the order they were sent, just like separate PUT requests, and sends the
+   * resulting events to its subscribers as one frame.
+   *
+   * <p>Every operation takes a token from the rate limit of its room, see {@link RateLimits}. If
+   * one of the rooms has none left, nothing is applied and the batch is rejected with {@code 429
+   * Too Many Requests}.
+   */
+  @PostMapping("/batch")
+  public Mono<ResponseEntity<Void>> batch(
+      @RequestBody List<BatchRequest> requests, ServerHttpRequest httpRequest) {
+    long started = System.nanoTime();
+    var operationsByRoom = new LinkedHashMap<String, List<RoomOperation>>();
+    for (var request : requests) {
+      if (request.room() == null || !ROOM_ID.matcher(request.room()).matches()) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid room " + request.room());
+      }
+      var operation =
+          RoomOperation.of(
+              request.timer(),
+              request.breaktimer(),
+              request.goal(),
+              request.deleteGoal(),
+              request.user(),
+              Instant.now(clock));
+      if (operation == null) {
+        log.warn("Could not understand batch request for room {}", request.room());
+        continue;
+      }
+      operationsByRoom.computeIfAbsent(request.room(), room -> new ArrayList<>()).add(operation);
+    }
+    var operationCounts = new LinkedHashMap<String, Integer>();
+    operationsByRoom.forEach(
+        (roomId, operations) -> operationCounts.put(roomId, operations.size()));
+    long wait =
+        rateLimits.tryAcquireBatch(httpRequest.getRemoteAddress(), operationCounts, started);
+    if (wait > 0) {
+      return Mono.just(
+          ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+              .header(HttpHeaders.RETRY_AFTER, RateLimits.retryAfter(wait))
+              .<Void>build());
+    }
+    // the rooms are independent of each other, so their shards apply them in parallel
+    var changes =
+        Flux.fromIterable(operationsByRoom.entrySet())
+            .flatMap(
+                entry -> {
+                  var roomId = entry.getKey();
+                  var operations = entry.getValue();
+                  return roomRepository
+                      .ownerOf(roomId)
+                      .apply(roomId, operations)
+                      .doOnSuccess(
+                          applied -> {
+                            log.info(
+                                "Apply {} batched requests for room {}",
+                                operations.size(),
+                                roomId);
+                            operations.forEach(operation -> stats.increment(roomId, operation));
+                          });
+                })
+            .then();
+    return batchDuration
+        .record(changes, started)
+        .then(Mono.just(ResponseEntity.accepted().<Void>build()));
   }
 
   @DeleteMapping("/{roomId:[A-Za-z0-9-_]+}/goal")
   @ResponseStatus(HttpStatus.ACCEPTED)
-  public void deleteGoal(@PathVariable String roomId, @RequestBody DeleteGoalRequest deleteGoalRequest) {
-    var room = roomRepository.get(roomId);
-    room.deleteGoal(deleteGoalRequest.user(), Instant.now(clock));
+  public Mono<Void> deleteGoal(
+      @PathVariable String roomId, @RequestBody DeleteGoalRequest deleteGoalRequest) {
+    long started = System.nanoTime();
+    var change =
+        roomRepository
+            .ownerOf(roomId)
+            .deleteGoal(roomId, deleteGoalRequest.user(), Instant.now(clock));
+    return deleteGoalDuration.record(change, started);
   }
 
   @GetMapping("/{roomId:[A-Za-z0-9-_]+}/goal")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   public ResponseEntity<GoalResponse> getGoal(@PathVariable String roomId) {
-    var room = roomRepository.get(roomId);
-    if (!room.hasGoal()){
+    var goal = roomRepository.ownerOf(roomId).currentGoal(roomId);
+    if (goal.goal() == null){
       return ResponseEntity.noContent().build();
     }
-    return ResponseEntity.ofNullable(GoalResponse.of(room.currentGoal()));
+    return ResponseEntity.ofNullable(GoalResponse.of(goal));
   }
 
-  private static long truncateTooLongTimers(Long timer) {
+  static long truncateTooLongTimers(Long timer) {
     return Math.min(60 * 24, Math.max(0, timer));
   }
 
-  private static String truncateTooLongGoal(String goal) {
+  static String truncateTooLongGoal(String goal) {
     return goal.length() > 256 ? goal.substring(0,256-1-3) + "...": goal;
   }
 
@@ -151,4 +313,8 @@ public class RoomApiController {
   public record PutGoalRequest(String goal, String user){}
   public record DeleteGoalRequest(String user){}
   public record PutTimerRequest(Long timer, Long breaktimer, String user){}
+
+  /** One timer, break timer, goal or goal deletion of a batch, like the single PUT requests. */
+  public record BatchRequest(
+      String room, Long timer, Long breaktimer, String goal, Boolean deleteGoal, String user) {}
 }
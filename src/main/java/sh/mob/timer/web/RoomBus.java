@@ -0,0 +1,19 @@
+package sh.mob.timer.web;
+
+/**
+ * Connects the nodes of a cluster.
+ *
+ * <p>Each node joins with the {@link RoomNode} that serves its own rooms and asks the bus for the
+ * nodes that own other rooms. Implementations decide how calls and event streams travel between
+ * nodes; event streams carry {@link SseFrame}s, whose bytes are already encoded and can be
+ * forwarded as they are.
+ */
+interface RoomBus {
+
+  void join(String nodeId, RoomNode node);
+
+  void leave(String nodeId);
+
+  /** Returns the node with the given id. */
+  RoomNode node(String nodeId);
+}
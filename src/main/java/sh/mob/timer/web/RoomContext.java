@@ -0,0 +1,17 @@
+package sh.mob.timer.web;
+
+import java.time.Duration;
+
+/** Collaborators that all rooms of a repository share. */
+record RoomContext(
+    int historyCapacity,
+    int resumeBuffer,
+    int subscriberQueue,
+    Duration slowSubscriberTimeout,
+    Duration coalesceWindow,
+    LiveCounters liveCounters,
+    RoomMetrics metrics,
+    SseFrameEncoder encoder,
+    StringPool strings,
+    RoomJournal journal,
+    RoomShards shards) {}
@@ -1,24 +1,35 @@
 package sh.mob.timer.web;
 
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.thymeleaf.ITemplateEngine;
 
 @Controller
 public class RoomController {
 
-  private final RoomRepository roomRepository;
+  private final PrerenderedPage page;
 
-  public RoomController(RoomRepository roomRepository) {
-    this.roomRepository = roomRepository;
+  public RoomController(
+      ITemplateEngine templateEngine, @Value("${spring.thymeleaf.cache:true}") boolean cache) {
+    // the page only needs the name, the room itself is created once the page subscribes to events
+    this.page =
+        new PrerenderedPage(
+            templateEngine,
+            "room",
+            Map.of("room", new RoomPage(PrerenderedPage.PLACEHOLDER)),
+            cache);
   }
 
   @GetMapping
   @RequestMapping(value = "/{roomId:[A-Za-z0-9-_]+}")
-  public String get(@PathVariable String roomId, Model model) {
-    model.addAttribute("room", roomRepository.get(roomId));
-    return "room";
+  public ResponseEntity<byte[]> get(@PathVariable String roomId) {
+    return page.render(roomId);
   }
+
+  public record RoomPage(String name) {}
 }
@@ -0,0 +1,46 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import sh.mob.timer.web.Room.Goal;
+import sh.mob.timer.web.Room.TimerRequest;
+
+/**
+ * Records what happens in rooms so that they survive a restart.
+ *
+ * <p>Rooms report every change to the journal, and the repository asks it for the persisted state
+ * of a room the first time the room is accessed.
+ */
+interface RoomJournal {
+
+  RoomJournal NONE =
+      new RoomJournal() {
+        @Override
+        public void timerRequestAdded(String room, TimerRequest timerRequest) {}
+
+        @Override
+        public void goalChanged(String room, Goal goal) {}
+
+        @Override
+        public Optional<PersistedRoom> restore(String room, Instant cutoff) {
+          return Optional.empty();
+        }
+
+        @Override
+        public boolean contains(String room) {
+          return false;
+        }
+      };
+
+  void timerRequestAdded(String room, TimerRequest timerRequest);
+
+  void goalChanged(String room, Goal goal);
+
+  /** Returns the persisted state of a room, without timer requests requested before cutoff. */
+  Optional<PersistedRoom> restore(String room, Instant cutoff);
+
+  boolean contains(String room);
+
+  record PersistedRoom(List<TimerRequest> history, Goal goal) {}
+}
@@ -0,0 +1,117 @@
+package sh.mob.timer.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters that rooms update on their hot paths.
+ *
+ * <p>Connections are tagged with the size of their room, bucketed by powers of two. The active
+ * connections gauge of a bucket is the sum of the subscribers of all rooms whose size falls into
+ * it, so a room that grows from 3 to 4 subscribers moves all of its connections to the next bucket.
+ */
+final class RoomMetrics {
+
+  private static final int[] BUCKET_LOWER_BOUNDS = {1, 2, 4, 8, 16};
+  private static final String[] BUCKET_NAMES = {"1", "2-3", "4-7", "8-15", "16+"};
+
+  private final Counter[] connectionsOpened = new Counter[BUCKET_NAMES.length];
+  private final Counter[] connectionsClosed = new Counter[BUCKET_NAMES.length];
+  private final AtomicLong[] activeConnections = new AtomicLong[BUCKET_NAMES.length];
+  private final Counter eventsEmitted;
+  private final Counter framesFannedOut;
+  private final Counter framesConflated;
+  private final Counter slowSubscribersDisconnected;
+  private final DistributionSummary historyLength;
+
+  RoomMetrics(MeterRegistry meterRegistry) {
+    for (int bucket = 0; bucket < BUCKET_NAMES.length; bucket++) {
+      var roomSize = BUCKET_NAMES[bucket];
+      connectionsOpened[bucket] =
+          Counter.builder("timer.connections.opened")
+              .description("Event streams opened, by the size of the room they joined")
+              .tag("room.size", roomSize)
+              .register(meterRegistry);
+      connectionsClosed[bucket] =
+          Counter.builder("timer.connections.closed")
+              .description("Event streams closed, by the size of the room they left")
+              .tag("room.size", roomSize)
+              .register(meterRegistry);
+      activeConnections[bucket] = new AtomicLong();
+      Gauge.builder("timer.connections.active", activeConnections[bucket], AtomicLong::get)
+          .description("Open event streams, by the current size of their room")
+          .tag("room.size", roomSize)
+          .register(meterRegistry);
+    }
+    this.eventsEmitted =
+        Counter.builder("timer.events.emitted")
+            .description("Room events sent to the subscribers of their room")
+            .register(meterRegistry);
+    this.framesFannedOut =
+        Counter.builder("timer.events.fanout")
+            .description("Room events times the number of subscribers they were sent to")
+            .register(meterRegistry);
+    this.framesConflated =
+        Counter.builder("timer.events.conflated")
+            .description("Queued events replaced by a newer event of the same kind")
+            .register(meterRegistry);
+    this.slowSubscribersDisconnected =
+        Counter.builder("timer.subscribers.disconnected")
+            .description("Event streams closed because they fell behind for too long")
+            .register(meterRegistry);
+    this.historyLength =
+        DistributionSummary.builder("timer.rooms.history.length")
+            .description("Length of the timer history of a room after a timer request was added")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+  }
+
+  /** Called after a room grew from {@code roomSize - 1} to {@code roomSize} subscribers. */
+  void connectionOpened(int roomSize) {
+    connectionsOpened[bucket(roomSize)].increment();
+    roomResized(roomSize - 1, roomSize);
+  }
+
+  /** Called after a room shrank from {@code roomSize + 1} to {@code roomSize} subscribers. */
+  void connectionClosed(int roomSize) {
+    connectionsClosed[bucket(roomSize + 1)].increment();
+    roomResized(roomSize + 1, roomSize);
+  }
+
+  private void roomResized(int from, int to) {
+    if (from > 0) {
+      activeConnections[bucket(from)].addAndGet(-from);
+    }
+    if (to > 0) {
+      activeConnections[bucket(to)].addAndGet(to);
+    }
+  }
+
+  void eventEmitted(int subscribers) {
+    eventsEmitted.increment();
+    framesFannedOut.increment(subscribers);
+  }
+
+  void eventConflated() {
+    framesConflated.increment();
+  }
+
+  void slowSubscriberDisconnected() {
+    slowSubscribersDisconnected.increment();
+  }
+
+  void historyAppended(int length) {
+    historyLength.record(length);
+  }
+
+  private static int bucket(int roomSize) {
+    int bucket = BUCKET_LOWER_BOUNDS.length - 1;
+    while (bucket > 0 && roomSize < BUCKET_LOWER_BOUNDS[bucket]) {
+      bucket--;
+    }
+    return bucket;
+  }
+}
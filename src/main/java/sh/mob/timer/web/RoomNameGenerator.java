@@ -1,33 +1,203 @@
 package sh.mob.timer.web;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Random;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
 import org.springframework.stereotype.Component;
 
+/**
+ * Generates room names like {@code big-boar-37} that no room uses yet.
+ *
+ * <p>Every name of the space adjective × animal × 10..99 has an index. A name is drawn by walking a
+ * random permutation of the indexes, a Feistel network over the next power of four restricted to
+ * the space by cycle walking, from a random position. Each index is visited at most once per draw,
+ * so a draw ends after at most as many steps as there are names, never retries a name and never
+ * recurses. A bitmap of one bit per name marks the names of the rooms in memory; only names whose
+ * bit is clear are checked against the caller.
+ */
 @Component
 public class RoomNameGenerator {
 
-  private final Random random = new Random();
-  private final List<String> animals = loadCsvFile("animals.csv");
-  private final List<String> adjectives = loadCsvFile("adjectives.csv");
+  private static final int NUMBERS = 90;
+  private static final int FIRST_NUMBER = 10;
+  private static final int ROUNDS = 4;
 
-  String randomName() {
-    return String.join("-", randomAdjective(), randomAnimal(), Integer.toString(randomNumber()));
+  private final List<String> adjectives;
+  private final List<String> animals;
+  private final Map<String, Integer> adjectiveIndexes;
+  private final Map<String, Integer> animalIndexes;
+  private final int size;
+  private final int halfBits;
+  private final int halfMask;
+  private final int[] keys = new int[ROUNDS];
+  private final AtomicLongArray occupied;
+  private final AtomicInteger occupiedCount = new AtomicInteger();
+
+  public RoomNameGenerator() {
+    this(loadCsvFile("adjectives.csv"), loadCsvFile("animals.csv"));
+  }
+
+  RoomNameGenerator(List<String> adjectives, List<String> animals) {
+    // a word listed twice would give two indexes the same name
+    this.adjectives = adjectives.stream().distinct().toList();
+    this.animals = animals.stream().distinct().toList();
+    this.adjectiveIndexes = indexes(this.adjectives);
+    this.animalIndexes = indexes(this.animals);
+    this.size = this.adjectives.size() * this.animals.size() * NUMBERS;
+    int bits = 0;
+    while ((1L << (2 * bits)) < size) {
+      bits++;
+    }
+    this.halfBits = bits;
+    this.halfMask = (1 << bits) - 1;
+    for (int round = 0; round < ROUNDS; round++) {
+      keys[round] = ThreadLocalRandom.current().nextInt();
+    }
+    this.occupied = new AtomicLongArray((size + 63) / 64);
+  }
+
+  /**
+   * Returns a name that is neither occupied nor taken according to the caller, e.g. by a persisted
+   * room.
+   *
+   * @throws IllegalStateException if every name is occupied or taken
+   */
+  String randomName(Predicate<String> taken) {
+    int start = size == 0 ? 0 : ThreadLocalRandom.current().nextInt(size);
+    for (int step = 0; step < size; step++) {
+      int position = start + step < size ? start + step : start + step - size;
+      int index = permute(position);
+      if (isOccupied(index)) {
+        continue;
+      }
+      var name = name(index);
+      if (!taken.test(name)) {
+        return name;
+      }
+    }
+    throw new IllegalStateException("All " + size + " room names are taken");
+  }
+
+  /** Marks the name as used by a room in memory, if it is part of the name space. */
+  void occupy(String name) {
+    int index = indexOf(name);
+    if (index < 0) {
+      return;
+    }
+    long bit = 1L << index;
+    long word = occupied.getAndUpdate(index >>> 6, current -> current | bit);
+    if ((word & bit) == 0) {
+      occupiedCount.incrementAndGet();
+    }
+  }
+
+  /** Marks the name as free again once its room left memory. */
+  void release(String name) {
+    int index = indexOf(name);
+    if (index < 0) {
+      return;
+    }
+    long bit = 1L << index;
+    long word = occupied.getAndUpdate(index >>> 6, current -> current & ~bit);
+    if ((word & bit) != 0) {
+      occupiedCount.decrementAndGet();
+    }
+  }
+
+  /** Marks every name as free. */
+  void releaseAll() {
+    for (int i = 0; i < occupied.length(); i++) {
+      occupied.set(i, 0);
+    }
+    occupiedCount.set(0);
+  }
+
+  /** Returns the share of the name space that rooms in memory occupy, from 0 to 1. */
+  double usage() {
+    return size == 0 ? 1 : (double) occupiedCount.get() / size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private boolean isOccupied(int index) {
+    return (occupied.get(index >>> 6) & (1L << index)) != 0;
+  }
+
+  private int permute(int position) {
+    int value = position;
+    do {
+      value = feistel(value);
+    } while (value >= size);
+    return value;
   }
 
-  private String randomAnimal() {
-    return animals.get(random.nextInt(animals.size()));
+  private int feistel(int value) {
+    int left = value >>> halfBits;
+    int right = value & halfMask;
+    for (int round = 0; round < ROUNDS; round++) {
+      int next = left ^ (mix(right ^ keys[round]) & halfMask);
+      left = right;
+      right = next;
+    }
+    return (left << halfBits) | right;
+  }
+
+  private static int mix(int value) {
+    value *= 0x9E3779B9;
+    value ^= value >>> 16;
+    value *= 0x85EBCA6B;
+    return value ^ (value >>> 13);
   }
 
-  private String randomAdjective() {
-    return adjectives.get(random.nextInt(adjectives.size()));
+  private String name(int index) {
+    int number = index % NUMBERS + FIRST_NUMBER;
+    int pair = index / NUMBERS;
+    var adjective = adjectives.get(pair / animals.size());
+    var animal = animals.get(pair % animals.size());
+    return new StringBuilder(adjective.length() + animal.length() + 4)
+        .append(adjective)
+        .append('-')
+        .append(animal)
+        .append('-')
+        .append(number)
+        .toString();
   }
 
-  private int randomNumber() {
-    return random.nextInt(90) + 10;
+  /** Returns the index of a name of the space, or -1 for any other name. */
+  private int indexOf(String name) {
+    int firstDash = name.indexOf('-');
+    int lastDash = name.lastIndexOf('-');
+    if (firstDash < 0 || lastDash <= firstDash || name.length() - lastDash != 3) {
+      return -1;
+    }
+    int tens = name.charAt(lastDash + 1) - '0';
+    int ones = name.charAt(lastDash + 2) - '0';
+    if (tens < 1 || tens > 9 || ones < 0 || ones > 9) {
+      return -1;
+    }
+    var adjective = adjectiveIndexes.get(name.substring(0, firstDash));
+    var animal = animalIndexes.get(name.substring(firstDash + 1, lastDash));
+    if (adjective == null || animal == null) {
+      return -1;
+    }
+    return (adjective * animals.size() + animal) * NUMBERS + tens * 10 + ones - FIRST_NUMBER;
+  }
+
+  private static Map<String, Integer> indexes(List<String> words) {
+    var indexes = new HashMap<String, Integer>();
+    for (int i = 0; i < words.size(); i++) {
+      indexes.put(words.get(i), i);
+    }
+    return indexes;
   }
 
   private static List<String> loadCsvFile(String csvFile) {
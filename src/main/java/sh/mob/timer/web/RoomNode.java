@@ -0,0 +1,33 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.List;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import sh.mob.timer.web.Room.Goal;
+
+/**
+ * The operations a node offers on the rooms it owns.
+ *
+ * <p>{@link RoomRepository} implements them for its own rooms; for rooms owned by another node of a
+ * cluster, the {@link RoomBus} hands out a {@code RoomNode} that sends each call to the owner.
+ * Changes happen once the returned Mono is subscribed to, and it completes once they are applied.
+ */
+interface RoomNode {
+
+  Mono<Void> addTimer(String room, long timer, String user, Instant requested);
+
+  Mono<Void> addBreaktimer(String room, long breaktimer, String user);
+
+  Mono<Void> setGoal(String room, String goal, String user, Instant requested);
+
+  Mono<Void> deleteGoal(String room, String user, Instant requested);
+
+  /** Applies the operations to a room in order, see {@link Room#apply(List)}. */
+  Mono<Void> apply(String room, List<RoomOperation> operations);
+
+  Goal currentGoal(String room);
+
+  /** The events of a room for one subscriber, see {@link Room#frames(String)}. */
+  Flux<SseFrame> frames(String room, String lastEventId);
+}
@@ -0,0 +1,33 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+
+/** A change to a room, as part of a batch that a room applies in order, see {@link Room#apply}. */
+sealed interface RoomOperation {
+
+  /**
+   * Returns the operation of a request shaped like the PUT requests of the API, with too long
+   * timers and goals truncated, or null if the request asks for nothing.
+   */
+  static RoomOperation of(
+      Long timer, Long breaktimer, String goal, Boolean deleteGoal, String user, Instant now) {
+    if (timer != null) {
+      return new AddTimer(RoomApiController.truncateTooLongTimers(timer), user, now);
+    } else if (breaktimer != null) {
+      return new AddBreaktimer(RoomApiController.truncateTooLongTimers(breaktimer), user);
+    } else if (goal != null) {
+      return new SetGoal(RoomApiController.truncateTooLongGoal(goal), user, now);
+    } else if (Boolean.TRUE.equals(deleteGoal)) {
+      return new DeleteGoal(user, now);
+    }
+    return null;
+  }
+
+  record AddTimer(long timer, String user, Instant requested) implements RoomOperation {}
+
+  record AddBreaktimer(long breaktimer, String user) implements RoomOperation {}
+
+  record SetGoal(String goal, String user, Instant requested) implements RoomOperation {}
+
+  record DeleteGoal(String user, Instant requested) implements RoomOperation {}
+}
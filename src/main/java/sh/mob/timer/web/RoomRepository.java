@@ -1,52 +1,415 @@
 package sh.mob.timer.web;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @Repository
-public class RoomRepository {
+public class RoomRepository implements RoomNode, SmartInitializingSingleton, DisposableBean {
 
   private static final Logger log = LoggerFactory.getLogger(RoomRepository.class);
 
+  private static final Duration BUSY_ROOM_RECHECK = Duration.ofHours(1);
+  private static final int EVICTION_CANDIDATES = 16;
+  private static final int STRING_POOL_SIZE = 1 << 16;
+
   private final Map<String, Room> repository;
 
   private final RoomNameGenerator roomNameGenerator;
+  private final RoomJournal journal;
+  private final Cluster cluster;
+  private final Duration historyRetention;
+  private final RoomContext roomContext;
+  private final RoomShards shards;
+  private final Scheduler blockingScheduler;
+  private final DeadlineQueue<String> expiryQueue = new DeadlineQueue<>();
+  private final LiveCounters liveCounters = new LiveCounters();
+  private final Counter evictedRooms;
+  private final Timer cleanUpDuration;
+  private final AtomicLong expiryLagMillis = new AtomicLong();
 
-  public RoomRepository(RoomNameGenerator roomNameGenerator) {
+  private final int maxRooms;
+  private final FrequencySketch frequencies;
+  private final Queue<Room> clock = new ConcurrentLinkedQueue<>();
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
+  private final Counter cacheEvictions;
+
+  public RoomRepository(
+      RoomNameGenerator roomNameGenerator,
+      SseFrameEncoder encoder,
+      Optional<RoomJournal> journal,
+      Optional<Cluster> cluster,
+      Scheduler blockingScheduler,
+      @Value("${room.history.retention}") Duration historyRetention,
+      @Value("${room.history.capacity}") int historyCapacity,
+      @Value("${room.events.resume-buffer}") int resumeBuffer,
+      @Value("${room.events.subscriber-queue}") int subscriberQueue,
+      @Value("${room.events.slow-subscriber-timeout}") Duration slowSubscriberTimeout,
+      @Value("${room.events.coalesce-window}") Duration coalesceWindow,
+      @Value("${room.cache.max-rooms}") int maxRooms,
+      @Value("${room.shards}") int shards,
+      MeterRegistry meterRegistry) {
     this.roomNameGenerator = roomNameGenerator;
+    this.journal = journal.orElse(RoomJournal.NONE);
+    this.cluster = cluster.orElse(null);
+    this.historyRetention = historyRetention;
+    this.blockingScheduler = blockingScheduler;
+    this.shards = new RoomShards(shards);
+    this.roomContext =
+        new RoomContext(
+            historyCapacity,
+            resumeBuffer,
+            subscriberQueue,
+            slowSubscriberTimeout,
+            coalesceWindow,
+            liveCounters,
+            new RoomMetrics(meterRegistry),
+            encoder,
+            new StringPool(STRING_POOL_SIZE),
+            this.journal,
+            this.shards);
     this.repository = new ConcurrentHashMap<>();
+    this.maxRooms = maxRooms;
+    this.frequencies = new FrequencySketch(maxRooms);
+    this.cacheHits = cacheCounter("hit", meterRegistry);
+    this.cacheMisses = cacheCounter("miss", meterRegistry);
+    this.cacheEvictions =
+        Counter.builder("timer.rooms.cache.evictions")
+            .description("Rooms evicted because the room cache was full")
+            .register(meterRegistry);
+    this.evictedRooms =
+        Counter.builder("timer.rooms.evicted")
+            .description("Idle rooms removed from the repository")
+            .register(meterRegistry);
+    Gauge.builder("timer.rooms.expiry.lag", expiryLagMillis, AtomicLong::get)
+        .description("How long the most overdue room waited for the last cleanup sweep")
+        .baseUnit("milliseconds")
+        .register(meterRegistry);
+    this.cleanUpDuration =
+        Timer.builder("timer.rooms.cleanup")
+            .description("Duration of the sweeps that expire room history and evict idle rooms")
+            .register(meterRegistry);
+    Gauge.builder("timer.rooms", repository, Map::size)
+        .description("Rooms in memory")
+        .register(meterRegistry);
+    Gauge.builder("timer.rooms.names.used", roomNameGenerator, RoomNameGenerator::usage)
+        .description("Share of the generated room names that rooms in memory use")
+        .register(meterRegistry);
+    Gauge.builder("timer.timers.active", liveCounters, LiveCounters::activeTimers)
+        .description("Rooms with a running timer")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    if (cluster != null) {
+      cluster.join(this);
+      cluster.checkReachable();
+    }
+  }
+
+  private static Counter cacheCounter(String result, MeterRegistry meterRegistry) {
+    return Counter.builder("timer.rooms.cache")
+        .description("Room lookups that found the room in memory (hit) or had to create it (miss)")
+        .tag("result", result)
+        .register(meterRegistry);
   }
 
+  /** Returns the room, creating or restoring it if it is not in memory. */
   Room get(String room) {
-    return repository.computeIfAbsent(
-        room,
-        name -> {
-          log.info("Created room {}", name);
-          return new Room(name);
+    frequencies.increment(room);
+    var cached = repository.get(room);
+    if (cached != null) {
+      cacheHits.increment();
+      return cached;
+    }
+    cacheMisses.increment();
+    var result = repository.computeIfAbsent(room, this::createRoom);
+    evictIfFull(room);
+    return result;
+  }
+
+  /**
+   * Returns the room pinned, see {@link Room#pin()}, creating or restoring it if it is not in
+   * memory. A room that was evicted between the lookup and the pin is looked up again.
+   */
+  Room acquire(String name) {
+    while (true) {
+      var room = get(name);
+      if (room.pin()) {
+        return room;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Returns a Mono that applies a change to the room on its shard once subscribed to. The room is
+   * looked up on the blocking scheduler, since restoring it may wait for the journal, and stays
+   * pinned until the change is applied, so that the change cannot get lost.
+   */
+  private Mono<Void> change(String name, Consumer<Room> change) {
+    return Mono.using(
+            () -> acquire(name),
+            room -> shards.apply(name, () -> change.accept(room)),
+            Room::unpin)
+        .subscribeOn(blockingScheduler);
+  }
+
+  /** Returns the room only if it is in memory. */
+  Optional<Room> find(String room) {
+    return Optional.ofNullable(repository.get(room));
+  }
+
+  /**
+   * Returns the node that owns the room: this repository, unless the room belongs to another node
+   * of the cluster.
+   */
+  RoomNode ownerOf(String room) {
+    return cluster == null || cluster.owns(room) ? this : cluster.owner(room);
+  }
+
+  @Override
+  public Mono<Void> addTimer(String room, long timer, String user, Instant requested) {
+    return change(room, current -> current.addTimer(timer, user, requested));
+  }
+
+  @Override
+  public Mono<Void> addBreaktimer(String room, long breaktimer, String user) {
+    return change(room, current -> current.addBreaktimer(breaktimer, user));
+  }
+
+  @Override
+  public Mono<Void> setGoal(String room, String goal, String user, Instant requested) {
+    return change(room, current -> current.setGoal(goal, user, requested));
+  }
+
+  @Override
+  public Mono<Void> deleteGoal(String room, String user, Instant requested) {
+    return change(room, current -> current.deleteGoal(user, requested));
+  }
+
+  @Override
+  public Mono<Void> apply(String room, List<RoomOperation> operations) {
+    return change(room, current -> current.apply(operations));
+  }
+
+  @Override
+  public Flux<SseFrame> frames(String name, String lastEventId) {
+    return Flux.defer(
+        () -> {
+          var room = acquire(name);
+          try {
+            // counted before the pin is released, a room with subscribers is never evicted
+            room.connectionOpened();
+          } finally {
+            room.unpin();
+          }
+          return room.frames(lastEventId).doFinally(signal -> room.connectionClosed());
         });
   }
 
+  /** Returns the current goal of a room without bringing the room into memory. */
+  @Override
+  public Room.Goal currentGoal(String room) {
+    return find(room)
+        .map(Room::currentGoal)
+        .or(
+            () ->
+                journal
+                    .restore(room, Instant.now().minus(historyRetention))
+                    .map(RoomJournal.PersistedRoom::goal))
+        .orElse(Room.Goal.NO_GOAL);
+  }
+
+  private Room createRoom(String name) {
+    var now = Instant.now();
+    var newRoom = new Room(name, now, roomContext);
+    journal
+        .restore(name, now.minus(historyRetention))
+        .ifPresentOrElse(
+            persisted -> {
+              newRoom.restore(persisted);
+              log.info("Restored room {}", name);
+            },
+            () -> log.info("Created room {}", name));
+    scheduleExpiry(newRoom, newRoom.nextExpiry(historyRetention));
+    clock.add(newRoom);
+    roomNameGenerator.occupy(name);
+    return newRoom;
+  }
+
+  /**
+   * Evicts rooms while there are more than allowed. Like a CLOCK cache, candidates are taken from
+   * the head of the clock queue; of a sample of them, the one with the lowest estimated access
+   * frequency is evicted and the others get a second chance at the tail. Rooms with subscribers, a
+   * running timer or a pending change are never evicted. Every call also advances the clock by
+   * one, which drops rooms that already left the repository.
+   */
+  private void evictIfFull(String addedRoom) {
+    var head = clock.poll();
+    if (head != null && repository.get(head.name()) == head) {
+      clock.add(head);
+    }
+    while (repository.size() > maxRooms) {
+      var sample = new ArrayList<Room>(EVICTION_CANDIDATES);
+      Room victim = null;
+      int victimFrequency = Integer.MAX_VALUE;
+      for (int i = 0; i < EVICTION_CANDIDATES; i++) {
+        var candidate = clock.poll();
+        if (candidate == null) {
+          break;
+        }
+        if (repository.get(candidate.name()) != candidate) {
+          continue;
+        }
+        sample.add(candidate);
+        int frequency = frequencies.frequency(candidate.name());
+        if (frequency < victimFrequency
+            && !candidate.name().equals(addedRoom)
+            && !candidate.isBusy()) {
+          victim = candidate;
+          victimFrequency = frequency;
+        }
+      }
+      boolean evicted = victim != null && evict(victim);
+      for (var room : sample) {
+        if (!evicted || room != victim) {
+          clock.add(room);
+        }
+      }
+      if (!evicted) {
+        return;
+      }
+    }
+  }
+
+  private boolean evict(Room room) {
+    var evicted =
+        repository.computeIfPresent(
+                room.name(),
+                (name, current) -> current == room && room.retire() ? release(room) : current)
+            == null;
+    if (evicted) {
+      cacheEvictions.increment();
+      log.info("Evicted room {} from the full room cache", room.name());
+    }
+    return evicted;
+  }
+
+  /** Frees the name of a room that leaves memory, returns null to remove it from the map. */
+  private Room release(Room room) {
+    roomNameGenerator.release(room.name());
+    return null;
+  }
+
   void deleteAll(){
     repository.clear();
+    expiryQueue.clear();
+    clock.clear();
+    roomNameGenerator.releaseAll();
   }
 
   @Scheduled(fixedRateString = "PT1M")
   void cleanUpUnusedRooms() {
-    repository.forEach((key, room) -> room.removeOldTimerRequests());
+    long started = System.nanoTime();
+    expireRooms(Instant.now())
+        .doFinally(signal -> cleanUpDuration.record(System.nanoTime() - started, NANOSECONDS))
+        .subscribe(null, e -> log.warn("Could not expire rooms", e));
   }
 
-  public String newRandomRoomName() {
-    String newRandomRoom = roomNameGenerator.randomName();
-    if (repository.containsKey(newRandomRoom)) {
-      return newRandomRoomName();
+  @Scheduled(fixedRateString = "PT1S")
+  void countDownEndedTimers() {
+    expireActiveTimers(Instant.now());
+  }
+
+  void expireActiveTimers(Instant now) {
+    liveCounters.expireTimers(now);
+  }
+
+  /**
+   * Expires the history of all rooms that are due and evicts the ones that became idle. Rooms that
+   * are not due are not touched. Each room is expired on its shard, like any other change; the
+   * returned Mono completes once all of them are done, without blocking the calling thread.
+   */
+  Mono<Void> expireRooms(Instant now) {
+    var cutoff = now.minus(historyRetention);
+    var expiries = new ArrayList<Mono<Void>>();
+    var lag =
+        expiryQueue.pollExpired(
+            now,
+            (name, deadline) ->
+                expiries.add(
+                    shards.apply(name, () -> expireRoom(name, deadline, now, cutoff))));
+    expiryLagMillis.set(lag.toMillis());
+    return Mono.when(expiries);
+  }
+
+  /**
+   * Rooms are scheduled by name, so that the queue does not keep evicted rooms in memory. Entries
+   * left behind by an evicted room, or by an earlier schedule of the same room, are skipped.
+   */
+  private void scheduleExpiry(Room room, Instant deadline) {
+    room.expiryScheduled(deadline.toEpochMilli());
+    expiryQueue.schedule(room.name(), deadline);
+  }
+
+  private void expireRoom(String name, Instant deadline, Instant now, Instant cutoff) {
+    var room = repository.get(name);
+    if (room == null || room.scheduledExpiry() != deadline.toEpochMilli()) {
+      return;
     }
+    room.removeOldTimerRequests(cutoff);
+    var evicted =
+        repository.computeIfPresent(
+                name,
+                (key, current) ->
+                    current == room && room.isIdle(cutoff) && room.retire()
+                        ? release(room)
+                        : current)
+            == null;
+    if (evicted) {
+      evictedRooms.increment();
+      log.info("Evicted idle room {}", room.name());
+      return;
+    }
+    var nextExpiry = room.nextExpiry(historyRetention);
+    if (!nextExpiry.isAfter(now)) {
+      // the room is only kept alive by its subscribers, check again after a while
+      nextExpiry = now.plus(BUSY_ROOM_RECHECK);
+    }
+    scheduleExpiry(room, nextExpiry);
+  }
 
-    return newRandomRoom;
+  /** Returns a generated name that neither a room in memory nor a persisted room uses. */
+  public String newRandomRoomName() {
+    return roomNameGenerator.randomName(
+        name -> repository.containsKey(name) || journal.contains(name));
   }
 
   public long count() {
@@ -54,13 +417,15 @@ public class RoomRepository {
   }
 
   public long countConnections() {
-    return repository.values().stream()
-        .mapToLong(room -> room.timerRequestSink().currentSubscriberCount())
-        .sum();
+    return liveCounters.connections();
   }
 
   public long countActiveTimers() {
-    var now = Instant.now();
-    return repository.values().stream().filter(room -> room.isTimerActive(now)).count();
+    return liveCounters.activeTimers();
+  }
+
+  @Override
+  public void destroy() {
+    shards.dispose();
   }
 }
@@ -0,0 +1,56 @@
+package sh.mob.timer.web;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Single-threaded executors that apply the changes to rooms, one per core by default.
+ *
+ * <p>Every room hashes to one shard. Changes to a room, the flush of the events it held back and
+ * the expiry of its history run one after the other on that shard, in the order they were
+ * submitted, while different rooms spread over all cores. Writers of the same room never wait for
+ * each other's lock, and request threads only hand the change over instead of waiting for it. A
+ * room is looked up, and restored from the journal if need be, before its change is handed over,
+ * so a slow restore never holds up the other rooms of the shard.
+ *
+ * <p>Rooms still keep their lock: new subscribers take their catch-up under it on their own
+ * thread, which also sends the held back events, and eviction reads the state of rooms from other
+ * threads.
+ */
+final class RoomShards {
+
+  private final Scheduler[] shards;
+
+  /** Creates the given number of shards, or one per available processor for 0. */
+  RoomShards(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative, but was " + count);
+    }
+    this.shards =
+        new Scheduler[count == 0 ? Runtime.getRuntime().availableProcessors() : count];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = Schedulers.newSingle("room-shard-" + i, true);
+    }
+  }
+
+  /** Returns a Mono that applies the change on the shard of the room once subscribed to. */
+  Mono<Void> apply(String room, Runnable change) {
+    return Mono.<Void>fromRunnable(change).subscribeOn(shardOf(room));
+  }
+
+  Scheduler shardOf(String room) {
+    int hash = room.hashCode();
+    return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+  }
+
+  int size() {
+    return shards.length;
+  }
+
+  void dispose() {
+    for (var shard : shards) {
+      shard.dispose();
+    }
+  }
+}
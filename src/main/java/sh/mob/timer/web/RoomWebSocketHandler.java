@@ -0,0 +1,175 @@
+package sh.mob.timer.web;
+
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * A WebSocket per room at {@code /{roomId}/websocket}, for clients that both follow a room and
+ * change it.
+ *
+ * <p>The server sends the same frames as the event stream, as text messages in the event stream
+ * format, so they are encoded once for both transports. {@code ?encoding=compact} and {@code
+ * ?lastEventId=} work like their event stream counterparts. Clients send commands shaped like the
+ * PUT requests, e.g. {@code {"timer":10,"user":"alice"}}, {@code {"goal":"Ship it","user":"alice"}}
+ * or {@code {"deleteGoal":true,"user":"alice"}}. Commands are charged to the same {@link
+ * RateLimits} as the PUT requests, and commands beyond them are dropped.
+ *
+ * <p>Instead of keep alive events, the server pings on every keep alive tick and closes the
+ * connection when the client did not answer with a pong for longer than the pong timeout.
+ */
+@Component
+public class RoomWebSocketHandler implements WebSocketHandler {
+
+  private static final Logger log = LoggerFactory.getLogger(RoomWebSocketHandler.class);
+
+  private final RoomRepository roomRepository;
+  private final SseFrameEncoder encoder;
+  private final KeepAlive keepAlive;
+  private final Stats stats;
+  private final Clock clock;
+  private final JsonMapper jsonMapper;
+  private final Scheduler blockingScheduler;
+  private final RateLimits rateLimits;
+  private final long pongTimeoutNanos;
+
+  public RoomWebSocketHandler(
+      RoomRepository roomRepository,
+      SseFrameEncoder encoder,
+      KeepAlive keepAlive,
+      Stats stats,
+      Clock clock,
+      JsonMapper jsonMapper,
+      Scheduler blockingScheduler,
+      RateLimits rateLimits,
+      @Value("${room.websocket.pong-timeout}") Duration pongTimeout) {
+    this.roomRepository = roomRepository;
+    this.encoder = encoder;
+    this.keepAlive = keepAlive;
+    this.stats = stats;
+    this.clock = clock;
+    this.jsonMapper = jsonMapper;
+    this.blockingScheduler = blockingScheduler;
+    this.rateLimits = rateLimits;
+    this.pongTimeoutNanos = pongTimeout.toNanos();
+  }
+
+  @Override
+  public Mono<Void> handle(WebSocketSession session) {
+    var uri = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri()).build();
+    var roomId = uri.getPathSegments().get(0);
+    var compact = "compact".equals(uri.getQueryParams().getFirst("encoding"));
+    var lastEventId = uri.getQueryParams().getFirst("lastEventId");
+    var client = session.getHandshakeInfo().getRemoteAddress();
+    var lastPong = new AtomicLong(System.nanoTime());
+    var unresponsive = Sinks.<Void>empty();
+
+    var frames =
+        roomRepository
+            .ownerOf(roomId)
+            .frames(roomId, lastEventId)
+            .subscribeOn(blockingScheduler)
+            .map(compact ? encoder::compact : frame -> frame)
+            .map(
+                frame ->
+                    new WebSocketMessage(
+                        WebSocketMessage.Type.TEXT, frame.toDataBuffer(session.bufferFactory())));
+    var pings =
+        keepAlive
+            .frames()
+            .<WebSocketMessage>handle(
+                (tick, sink) -> {
+                  if (System.nanoTime() - lastPong.get() > pongTimeoutNanos) {
+                    unresponsive.tryEmitEmpty();
+                    sink.complete();
+                  } else {
+                    sink.next(session.pingMessage(factory -> factory.wrap(new byte[0])));
+                  }
+                });
+    var commands =
+        session
+            .receive()
+            // reads each message right away, its payload is released once it was handed over
+            .map(
+                message ->
+                    switch (message.getType()) {
+                      case PONG -> {
+                        lastPong.set(System.nanoTime());
+                        yield Mono.<Void>empty();
+                      }
+                      case TEXT -> execute(client, roomId, message.getPayloadAsText());
+                      default -> Mono.<Void>empty();
+                    })
+            .concatMap(command -> command)
+            .then();
+
+    return Mono.firstWithSignal(
+            session.send(frames.mergeWith(pings)), commands, unresponsive.asMono())
+        .then(session.close());
+  }
+
+  /** Returns a Mono that applies the command once subscribed to, unless it is over the limit. */
+  private Mono<Void> execute(InetSocketAddress client, String roomId, String payload) {
+    if (rateLimits.tryAcquireChange(client, roomId, System.nanoTime()) > 0) {
+      log.debug("Dropped WebSocket command for room {} beyond the rate limit", roomId);
+      return Mono.empty();
+    }
+    Command command;
+    try {
+      command = jsonMapper.readValue(payload, Command.class);
+    } catch (JacksonException e) {
+      log.warn("Could not read WebSocket command for room {}", roomId);
+      return Mono.empty();
+    }
+    var operation =
+        RoomOperation.of(
+            command.timer(),
+            command.breaktimer(),
+            command.goal(),
+            command.deleteGoal(),
+            command.user(),
+            Instant.now(clock));
+    if (operation == null) {
+      log.warn("Could not understand WebSocket command for room {}", roomId);
+      return Mono.empty();
+    }
+    return roomRepository
+        .ownerOf(roomId)
+        .apply(roomId, List.of(operation))
+        .doOnSuccess(
+            applied -> {
+              log.info("Apply {} by WebSocket for room {}", operation, roomId);
+              stats.increment(roomId, operation);
+            });
+  }
+
+  /** Ordered before the annotated controllers, as WebFlux recommends for WebSocket handlers. */
+  @Bean
+  HandlerMapping roomWebSocketMapping() {
+    return new SimpleUrlHandlerMapping(Map.of("/{roomId:[A-Za-z0-9-_]+}/websocket", this), -1);
+  }
+
+  /** A command sent by a client, shaped like the PUT requests. */
+  public record Command(
+      Long timer, Long breaktimer, String goal, Boolean deleteGoal, String user) {}
+}
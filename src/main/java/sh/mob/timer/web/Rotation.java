@@ -0,0 +1,59 @@
+package sh.mob.timer.web;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+
+/**
+ * Incrementally maintained view of who took over from whom in a room.
+ *
+ * <p>For every user it remembers the user that followed their last hand-over (the last time the
+ * next timer was started by somebody else). Together with the first user of the history this is
+ * enough to answer {@link #nextUser(String)} in constant time, with the same result as scanning
+ * the whole history.
+ */
+final class Rotation {
+
+  private final Map<String, String> successors = new HashMap<>();
+  private String first;
+  private String last;
+
+  void add(TimerRequest timerRequest) {
+    if (timerRequest.getType() != TimerType.TIMER) {
+      return;
+    }
+    var user = timerRequest.getUser();
+    if (user == null || user.isBlank()) {
+      return;
+    }
+    if (first == null) {
+      first = user;
+    } else if (!user.equals(last)) {
+      successors.put(last, user);
+    }
+    last = user;
+  }
+
+  void rebuild(Iterable<TimerRequest> timerRequests) {
+    successors.clear();
+    first = null;
+    last = null;
+    timerRequests.forEach(this::add);
+  }
+
+  String nextUser(String user) {
+    if (first == null) {
+      return null;
+    }
+    var successor = successors.get(user);
+    if (successor != null) {
+      return successor;
+    }
+    if (successors.isEmpty() && Objects.equals(first, user)) {
+      return null;
+    }
+    return first;
+  }
+}
@@ -0,0 +1,83 @@
+package sh.mob.timer.web;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+/**
+ * A server-sent event that has been encoded once and is written as is to every subscriber.
+ *
+ * <p>The encoded bytes are never modified, so the same array is wrapped for every connection. The
+ * compact form of a frame is encoded on first use and then kept with it, see {@link
+ * SseFrameEncoder#compact(SseFrame)}.
+ */
+final class SseFrame {
+
+  private final EventId id;
+  private final String event;
+  private final Object data;
+  private final byte[] bytes;
+  private final List<SseFrame> parts;
+  private volatile SseFrame compact;
+
+  SseFrame(EventId id, String event, Object data, byte[] bytes) {
+    this(id, event, data, bytes, List.of());
+  }
+
+  SseFrame(EventId id, String event, Object data, byte[] bytes, List<SseFrame> parts) {
+    this.id = id;
+    this.event = event;
+    this.data = data;
+    this.bytes = bytes;
+    this.parts = parts;
+  }
+
+  /** Returns the id of this frame, or null for frames that are not part of the room's sequence. */
+  EventId id() {
+    return id;
+  }
+
+  long sequence() {
+    return id == null ? 0 : id.sequence();
+  }
+
+  /** Returns the event of this frame, or null for a combination of frames of different events. */
+  String event() {
+    return event;
+  }
+
+  Object data() {
+    return data;
+  }
+
+  /** Returns the frames this frame combines, or an empty list for a single event. */
+  List<SseFrame> parts() {
+    return parts;
+  }
+
+  SseFrame compact() {
+    return compact;
+  }
+
+  void compact(SseFrame compact) {
+    this.compact = compact;
+  }
+
+  int length() {
+    return bytes.length;
+  }
+
+  void writeTo(ByteArrayOutputStream out) {
+    out.writeBytes(bytes);
+  }
+
+  DataBuffer toDataBuffer(DataBufferFactory bufferFactory) {
+    return bufferFactory.wrap(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return "SseFrame[id=" + id + ", event=" + event + ", data=" + data + ']';
+  }
+}
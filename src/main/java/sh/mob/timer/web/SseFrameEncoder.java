@@ -0,0 +1,95 @@
+package sh.mob.timer.web;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.stereotype.Component;
+import sh.mob.timer.web.Room.Goal;
+import tools.jackson.databind.json.JsonMapper;
+
+/** Encodes room events into {@link SseFrame}s, in the same format Spring writes them. */
+@Component
+public final class SseFrameEncoder {
+
+  private static final byte[] DATA = "\ndata:".getBytes(UTF_8);
+  private static final byte[] END_OF_EVENT = "\n\n".getBytes(UTF_8);
+
+  private final JsonMapper jsonMapper;
+  private final SseFrame noTimerRequest;
+  private final SseFrame noGoal;
+
+  public SseFrameEncoder(JsonMapper jsonMapper) {
+    this.jsonMapper = jsonMapper;
+    this.noTimerRequest = encode("TIMER_REQUEST", Room.NULL_TIMER_REQUEST);
+    this.noGoal = encode("GOAL_REQUEST", Goal.NO_GOAL);
+  }
+
+  SseFrame encode(String event, Object data) {
+    return encode(null, event, data);
+  }
+
+  SseFrame encode(EventId id, String event, Object data) {
+    return encode(id, event, data, jsonMapper.writeValueAsBytes(data));
+  }
+
+  private static SseFrame encode(EventId id, String event, Object data, byte[] encodedData) {
+    var out = new ByteArrayOutputStream(encodedData.length + event.length() + 48);
+    if (id != null) {
+      out.writeBytes(("id:" + id + "\n").getBytes(UTF_8));
+    }
+    out.writeBytes(("event:" + event).getBytes(UTF_8));
+    out.writeBytes(DATA);
+    out.writeBytes(encodedData);
+    out.writeBytes(END_OF_EVENT);
+    return new SseFrame(id, event, data, out.toByteArray());
+  }
+
+  /**
+   * Joins consecutive frames of a room into one, which is written to subscribers in one go but
+   * still holds one event per frame. It carries the id of the last frame, and their event if they
+   * all share one.
+   */
+  SseFrame combine(List<SseFrame> frames) {
+    var out = new ByteArrayOutputStream(frames.stream().mapToInt(SseFrame::length).sum());
+    var event = frames.get(0).event();
+    for (var frame : frames) {
+      frame.writeTo(out);
+      if (!Objects.equals(event, frame.event())) {
+        event = null;
+      }
+    }
+    var last = frames.get(frames.size() - 1);
+    var data = frames.stream().map(SseFrame::data).toList();
+    return new SseFrame(last.id(), event, data, out.toByteArray(), List.copyOf(frames));
+  }
+
+  /**
+   * Returns the frame with its data in {@link CompactEncoding}. Like the frame itself, the compact
+   * form is encoded once and shared by all subscribers that asked for it.
+   */
+  SseFrame compact(SseFrame frame) {
+    var compact = frame.compact();
+    if (compact != null) {
+      return compact;
+    }
+    if (frame.parts().isEmpty()) {
+      var data = Base64.getEncoder().encode(CompactEncoding.encode(frame.data()));
+      compact = encode(frame.id(), frame.event(), frame.data(), data);
+    } else {
+      compact = combine(frame.parts().stream().map(this::compact).toList());
+    }
+    frame.compact(compact);
+    return compact;
+  }
+
+  SseFrame noTimerRequest() {
+    return noTimerRequest;
+  }
+
+  SseFrame noGoal() {
+    return noGoal;
+  }
+}
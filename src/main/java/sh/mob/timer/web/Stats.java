@@ -1,45 +1,37 @@
 package sh.mob.timer.web;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.springframework.stereotype.Component;
 
 @Component
 public class Stats {
 
+  static final int MAX_MINUTES = 60 * 24;
+
   private static final String SMOKETEST_ROOM_NAME = "testroom-310a9c47-515c-4ad7-a229-ae8efbab7387";
   private final Instant statisticsSince = Instant.now();
-  private ConcurrentHashMap<Long, Long> timerCounts = new ConcurrentHashMap<Long, Long>();
-  private ConcurrentHashMap<Long, Long> breaktimerCounts = new ConcurrentHashMap<Long, Long>();
-  private AtomicLong goalCount = new AtomicLong(0);
+  private final Histogram timerCounts = new Histogram();
+  private final Histogram breaktimerCounts = new Histogram();
+  private final AtomicLong goalCount = new AtomicLong(0);
 
   public void incrementTimer(String roomname, long timer) {
     if (Objects.equals(roomname, SMOKETEST_ROOM_NAME)) {
       return;
     }
-    Long count = timerCounts.get(timer);
-    if (count == null) {
-      count = 0L;
-    }
-    count++;
-    timerCounts.put(timer, count);
+    timerCounts.increment(timer);
   }
 
   public void incrementBreaktimer(String roomname, long breakTimer) {
     if (Objects.equals(roomname, SMOKETEST_ROOM_NAME)) {
       return;
     }
-    Long count = breaktimerCounts.get(breakTimer);
-    if (count == null) {
-      count = 0L;
-    }
-    count++;
-    breaktimerCounts.put(breakTimer, count);
+    breaktimerCounts.increment(breakTimer);
   }
 
   public void incrementGoalCount(String roomname) {
@@ -49,19 +41,63 @@ public class Stats {
     goalCount.incrementAndGet();
   }
 
+  /** Counts an operation of a batch or a WebSocket command like the matching PUT request. */
+  void increment(String roomname, RoomOperation operation) {
+    switch (operation) {
+      case RoomOperation.AddTimer addTimer -> incrementTimer(roomname, addTimer.timer());
+      case RoomOperation.AddBreaktimer addBreaktimer ->
+          incrementBreaktimer(roomname, addBreaktimer.breaktimer());
+      case RoomOperation.SetGoal setGoal -> incrementGoalCount(roomname);
+      case RoomOperation.DeleteGoal deleteGoal -> {}
+    }
+  }
+
   public long getGoalCount() {
     return goalCount.get();
   }
 
-  public SortedMap<Long, Long> getTimer() {
-    return new TreeMap<>(timerCounts);
+  public List<Count> getTimer() {
+    return timerCounts.snapshot();
   }
 
-  public SortedMap<Long, Long> getBreaktimer() {
-    return new TreeMap<>(breaktimerCounts);
+  public List<Count> getBreaktimer() {
+    return breaktimerCounts.snapshot();
   }
 
   public Instant getStatisticsSince() {
     return statisticsSince;
   }
+
+  /** How often a timer of the given number of minutes was started. */
+  public record Count(long minutes, long count) {}
+
+  /**
+   * Counts per minute from 0 to {@link #MAX_MINUTES}, one {@link LongAdder} per minute so that
+   * concurrent requests for the same popular timer do not contend on a single counter.
+   */
+  private static final class Histogram {
+
+    private final LongAdder[] counts = new LongAdder[MAX_MINUTES + 1];
+
+    Histogram() {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = new LongAdder();
+      }
+    }
+
+    void increment(long minutes) {
+      counts[(int) Math.min(MAX_MINUTES, Math.max(0, minutes))].increment();
+    }
+
+    List<Count> snapshot() {
+      var snapshot = new ArrayList<Count>();
+      for (int minutes = 0; minutes < counts.length; minutes++) {
+        long count = counts[minutes].sum();
+        if (count > 0) {
+          snapshot.add(new Count(minutes, count));
+        }
+      }
+      return snapshot;
+    }
+  }
 }
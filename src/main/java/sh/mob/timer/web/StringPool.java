@@ -0,0 +1,46 @@
+package sh.mob.timer.web;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shares the instances of user names and goals that rooms keep in their history.
+ *
+ * <p>Request bodies bring a new string for every request, although a room sees the same few names
+ * thousands of times a day. The pool is a fixed-size table indexed by hash, so it never grows: a
+ * string that collides with another simply replaces it. Entries are weakly referenced and vanish
+ * once no room holds on to them. Lookups and updates take no lock, only release and acquire
+ * ordering on the slot; a lost race costs a duplicate string, never a wrong one.
+ */
+final class StringPool {
+
+  private final AtomicReferenceArray<WeakReference<String>> table;
+  private final int mask;
+
+  /** Creates a pool of the given size, a power of two, or a pool that shares nothing for 0. */
+  StringPool(int size) {
+    if (size < 0 || Integer.bitCount(size) > 1) {
+      throw new IllegalArgumentException("size must be 0 or a power of two, but was " + size);
+    }
+    this.table = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /** Returns a pooled string equal to value, or value itself after pooling it. */
+  String intern(String value) {
+    if (value == null || table.length() == 0) {
+      return value;
+    }
+    int hash = value.hashCode();
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    var pooled = table.getAcquire(slot);
+    if (pooled != null) {
+      var candidate = pooled.get();
+      if (value.equals(candidate)) {
+        return candidate;
+      }
+    }
+    table.setRelease(slot, new WeakReference<>(value));
+    return value;
+  }
+}
@@ -0,0 +1,189 @@
+package sh.mob.timer.web;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import sh.mob.timer.web.Room.TimerRequest;
+
+/**
+ * Append-only log of the timer requests of a room, ordered by {@code requested}.
+ *
+ * <p>Entries are stored in linked fixed-size chunks. A slot is written exactly once, so appending
+ * never copies and {@link #snapshot()} can hand out views on the chunks without copying them. Old
+ * entries are expired by moving the head forward; chunks that are no longer referenced by the log
+ * or by a snapshot are left to the garbage collector.
+ *
+ * <p>The log holds at most {@code capacity} entries. When it is full, the oldest chunk is dropped
+ * at once.
+ */
+final class TimerHistory {
+
+  static final int CHUNK_SIZE = 64;
+
+  private final int capacity;
+
+  private Chunk head = new Chunk();
+  private int headOffset;
+  private Chunk tail = head;
+  private int tailSize;
+  private int size;
+  private TimerRequest latest;
+
+  TimerHistory(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive, but was " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Appends a timer request.
+   *
+   * @return {@code true} if older entries had to be dropped to stay within the capacity
+   */
+  synchronized boolean append(TimerRequest timerRequest) {
+    boolean dropped = false;
+    if (size >= capacity) {
+      dropHeadChunk();
+      dropped = true;
+    }
+    if (tailSize == CHUNK_SIZE) {
+      var chunk = new Chunk();
+      tail.next = chunk;
+      tail = chunk;
+      tailSize = 0;
+    }
+    tail.entries[tailSize++] = timerRequest;
+    size++;
+    latest = timerRequest;
+    return dropped;
+  }
+
+  /**
+   * Removes all entries that were requested before {@code cutoff}.
+   *
+   * @return the number of removed entries
+   */
+  synchronized int expire(Instant cutoff) {
+    int removed = 0;
+    while (size > 0 && head.entries[headOffset].isRequestedBefore(cutoff)) {
+      removeFirst();
+      removed++;
+    }
+    return removed;
+  }
+
+  synchronized TimerRequest latest() {
+    return latest;
+  }
+
+  synchronized TimerRequest oldest() {
+    return size == 0 ? null : head.entries[headOffset];
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns an unmodifiable view of all current entries, unaffected by later changes. */
+  synchronized List<TimerRequest> snapshot() {
+    return new Snapshot(head, headOffset, size);
+  }
+
+  /** Returns an unmodifiable view of all current entries except the latest one. */
+  synchronized List<TimerRequest> snapshotWithoutLatest() {
+    return size <= 1 ? List.of() : new Snapshot(head, headOffset, size - 1);
+  }
+
+  private void dropHeadChunk() {
+    int remainingInHead = head == tail ? tailSize - headOffset : CHUNK_SIZE - headOffset;
+    for (int i = 0; i < remainingInHead; i++) {
+      removeFirst();
+    }
+  }
+
+  private void removeFirst() {
+    size--;
+    headOffset++;
+    if (head == tail) {
+      if (headOffset == tailSize) {
+        head = tail = new Chunk();
+        headOffset = 0;
+        tailSize = 0;
+        latest = null;
+      }
+    } else if (headOffset == CHUNK_SIZE) {
+      head = head.next;
+      headOffset = 0;
+    }
+  }
+
+  private static final class Chunk {
+    private final TimerRequest[] entries = new TimerRequest[CHUNK_SIZE];
+    private Chunk next;
+  }
+
+  private static final class Snapshot extends AbstractList<TimerRequest> {
+
+    private final Chunk first;
+    private final int offset;
+    private final int size;
+
+    private Snapshot(Chunk first, int offset, int size) {
+      this.first = first;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    @Override
+    public TimerRequest get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      int position = offset + index;
+      var chunk = first;
+      for (int i = 0; i < position / CHUNK_SIZE; i++) {
+        chunk = chunk.next;
+      }
+      return chunk.entries[position % CHUNK_SIZE];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Iterator<TimerRequest> iterator() {
+      return new Iterator<>() {
+        private Chunk chunk = first;
+        private int position = offset;
+        private int returned;
+
+        @Override
+        public boolean hasNext() {
+          return returned < size;
+        }
+
+        @Override
+        public TimerRequest next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          if (position == CHUNK_SIZE) {
+            chunk = chunk.next;
+            position = 0;
+          }
+          returned++;
+          return chunk.entries[position++];
+        }
+      };
+    }
+  }
+}
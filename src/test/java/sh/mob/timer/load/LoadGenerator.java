@@ -0,0 +1,267 @@
+package sh.mob.timer.load;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import sh.mob.timer.TimerApplication;
+
+/**
+ * Starts the timer on a random local port, subscribes many event streams to it and sends timer and
+ * goal requests at a fixed rate. Reports how long it took from sending a request until every
+ * subscriber of the room received the event, and the heap and threads the process used.
+ *
+ * <p>Client and server share one JVM, so the numbers include the load generator itself. The server
+ * runs without rate limits and connection caps, which would otherwise reject part of the load.
+ * Settings are system properties:
+ *
+ * <ul>
+ *   <li>{@code load.connections}: event streams to open (1000)
+ *   <li>{@code load.rooms}: rooms to spread them over (100)
+ *   <li>{@code load.skew}: Zipf exponent of the room sizes, 0 for equally sized rooms (1.0)
+ *   <li>{@code load.rate}: requests per second (50)
+ *   <li>{@code load.goal-ratio}: share of goal requests among them (0.1)
+ *   <li>{@code load.duration}: how long to send requests (PT30S)
+ * </ul>
+ *
+ * <pre>
+ * ./mvnw test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=sh.mob.timer.load.LoadGenerator -Dload.connections=10000
+ * </pre>
+ */
+public final class LoadGenerator {
+
+  private static final Pattern SEQUENCE = Pattern.compile("\"user\":\"load-(\\d+)\"");
+  private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENT =
+      new ParameterizedTypeReference<>() {};
+
+  private final int connections = Integer.getInteger("load.connections", 1_000);
+  private final int rooms = Integer.getInteger("load.rooms", 100);
+  private final double skew = Double.parseDouble(System.getProperty("load.skew", "1.0"));
+  private final int rate = Integer.getInteger("load.rate", 50);
+  private final double goalRatio =
+      Double.parseDouble(System.getProperty("load.goal-ratio", "0.1"));
+  private final Duration duration = Duration.parse(System.getProperty("load.duration", "PT30S"));
+
+  private final Random random = new Random(42);
+  private final Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+  private final Delays delays = new Delays();
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong disconnected = new AtomicLong();
+  private final Disposable.Composite subscriptions = Disposables.composite();
+  private long peakHeapUsed;
+
+  public static void main(String[] args) throws InterruptedException {
+    var application =
+        new SpringApplicationBuilder(TimerApplication.class)
+            .properties("logging.level.sh.mob.timer=WARN")
+            // arguments, since application.properties overrides default properties
+            .run(
+                "--server.port=0",
+                "--room.limits.client-requests-per-second=0",
+                "--room.limits.room-requests-per-second=0",
+                "--room.limits.max-connections=0",
+                "--room.limits.max-connections-per-room=0");
+    try {
+      int port =
+          application.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+      new LoadGenerator().run("http://localhost:" + port);
+    } finally {
+      application.close();
+    }
+  }
+
+  private void run(String baseUrl) throws InterruptedException {
+    var connectionProvider =
+        ConnectionProvider.builder("load")
+            .maxConnections(connections + 1_000)
+            .pendingAcquireMaxCount(-1)
+            .build();
+    var webClient =
+        WebClient.builder()
+            .baseUrl(baseUrl)
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+            .build();
+
+    var roomSizes = subscribe(webClient);
+    System.out.printf(
+        "%d event streams in %d rooms, largest room %d, smallest room %d%n",
+        connections,
+        rooms,
+        Arrays.stream(roomSizes).max().orElse(0),
+        Arrays.stream(roomSizes).min().orElse(0));
+
+    var requests = sendRequests(webClient, roomSizes);
+    Thread.sleep(2_000);
+    subscriptions.dispose();
+    connectionProvider.disposeLater().block();
+
+    System.out.printf(
+        "%d requests sent, %d accepted, %d failed%n", requests, accepted.get(), failed.get());
+    System.out.printf(
+        "%d events received, %d streams closed early%n", delays.count(), disconnected.get());
+    System.out.printf(
+        "delay from request to event: p50 %s, p99 %s, p999 %s, max %s%n",
+        millis(delays.percentile(0.5)),
+        millis(delays.percentile(0.99)),
+        millis(delays.percentile(0.999)),
+        millis(delays.percentile(1.0)));
+    var threads = ManagementFactory.getThreadMXBean();
+    System.out.printf(
+        "heap peak %d MB of %d MB, threads %d (peak %d)%n",
+        peakHeapUsed >> 20,
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax() >> 20,
+        threads.getThreadCount(),
+        threads.getPeakThreadCount());
+  }
+
+  /** Opens all event streams and waits until each received its initial history. */
+  private int[] subscribe(WebClient webClient) throws InterruptedException {
+    var cumulativeWeights = new double[rooms];
+    double total = 0;
+    for (int room = 0; room < rooms; room++) {
+      total += 1 / Math.pow(room + 1, skew);
+      cumulativeWeights[room] = total;
+    }
+    var roomSizes = new int[rooms];
+    var connected = new CountDownLatch(connections);
+    for (int i = 0; i < connections; i++) {
+      int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * total);
+      int room = index >= 0 ? index : Math.min(rooms - 1, -index - 1);
+      roomSizes[room]++;
+      subscriptions.add(subscribe(webClient, roomName(room), connected));
+    }
+    if (!connected.await(5, TimeUnit.MINUTES)) {
+      throw new IllegalStateException(connected.getCount() + " event streams did not connect");
+    }
+    return roomSizes;
+  }
+
+  private Disposable subscribe(WebClient webClient, String room, CountDownLatch connected) {
+    long connectedAt = System.nanoTime();
+    return webClient
+        .get()
+        .uri("/{room}/events", room)
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .retrieve()
+        .bodyToFlux(EVENT)
+        .subscribe(
+            event -> received(event, connectedAt, connected),
+            error -> disconnected.incrementAndGet());
+  }
+
+  private void received(ServerSentEvent<String> event, long connectedAt, CountDownLatch connected) {
+    long now = System.nanoTime();
+    if ("INITIAL_HISTORY".equals(event.event())) {
+      connected.countDown();
+      return;
+    }
+    if (event.data() == null) {
+      return;
+    }
+    var matcher = SEQUENCE.matcher(event.data());
+    if (!matcher.find()) {
+      return;
+    }
+    var sent = sentAt.get(Long.parseLong(matcher.group(1)));
+    // the latest event is replayed to new subscribers, only count events sent after connecting
+    if (sent != null && sent >= connectedAt) {
+      delays.record(now - sent);
+    }
+  }
+
+  /** Sends requests at the configured rate to rooms chosen by their number of subscribers. */
+  private long sendRequests(WebClient webClient, int[] roomSizes) {
+    var subscribedRooms = Arrays.stream(roomSizes).filter(size -> size > 0).count();
+    var roomBySubscriber = new int[connections];
+    for (int room = 0, i = 0; room < rooms; room++) {
+      Arrays.fill(roomBySubscriber, i, i + roomSizes[room], room);
+      i += roomSizes[room];
+    }
+    System.out.printf(
+        "Sending %d requests per second to %d rooms for %s%n", rate, subscribedRooms, duration);
+    long requests = duration.toMillis() * rate / 1_000;
+    var sampler = Flux.interval(Duration.ofMillis(100)).subscribe(tick -> sampleHeap());
+    Flux.interval(Duration.ofNanos(1_000_000_000L / rate))
+        .take(requests)
+        .doOnNext(
+            sequence ->
+                send(webClient, roomName(roomBySubscriber[random.nextInt(connections)]), sequence))
+        .blockLast();
+    sampler.dispose();
+    return requests;
+  }
+
+  private void send(WebClient webClient, String room, long sequence) {
+    var user = "load-" + sequence;
+    var request =
+        random.nextDouble() < goalRatio
+            ? webClient
+                .put()
+                .uri("/{room}/goal", room)
+                .bodyValue(Map.of("goal", user, "user", user))
+            : webClient.put().uri("/{room}", room).bodyValue(Map.of("timer", 10, "user", user));
+    sentAt.put(sequence, System.nanoTime());
+    request
+        .retrieve()
+        .toBodilessEntity()
+        .subscribe(response -> accepted.incrementAndGet(), error -> failed.incrementAndGet());
+  }
+
+  private void sampleHeap() {
+    peakHeapUsed =
+        Math.max(peakHeapUsed, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+  }
+
+  private static String roomName(int room) {
+    return "load-room-" + room;
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.2f ms", nanos / 1_000_000.0);
+  }
+
+  /** All recorded delays in nanoseconds, sorted only when percentiles are asked for. */
+  private static final class Delays {
+
+    private long[] values = new long[1_024];
+    private int count;
+
+    synchronized void record(long nanos) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, count * 2);
+      }
+      values[count++] = nanos;
+    }
+
+    synchronized int count() {
+      return count;
+    }
+
+    synchronized long percentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      Arrays.sort(values, 0, count);
+      return values[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+    }
+  }
+}
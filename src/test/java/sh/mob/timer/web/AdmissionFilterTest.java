@@ -0,0 +1,96 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webtestclient.autoconfigure.AutoConfigureWebTestClient;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+import sh.mob.timer.web.RoomApiController.BatchRequest;
+import sh.mob.timer.web.RoomApiController.PutTimerRequest;
+
+@SpringBootTest(
+    properties = {
+      "room.limits.room-requests-per-second=1",
+      "room.limits.room-burst=2",
+      "room.limits.max-connections-per-room=1"
+    })
+@AutoConfigureWebTestClient
+class AdmissionFilterTest {
+
+  @Autowired private WebTestClient webTestClient;
+
+  @Test
+  void rejectsChangesToARoomBeyondItsRate() {
+    putTimer("big-boar-37").expectStatus().isAccepted();
+    putTimer("big-boar-37").expectStatus().isAccepted();
+
+    putTimer("big-boar-37")
+        .expectStatus()
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+        .expectHeader()
+        .valueEquals("Retry-After", "1");
+    putTimer("red-frog-12").expectStatus().isAccepted();
+  }
+
+  @Test
+  void chargesEveryOperationOfABatchToItsRoom() {
+    var batch =
+        List.of(
+            new BatchRequest("green-owl-7", 10L, null, null, null, "alice"),
+            new BatchRequest("green-owl-7", 10L, null, null, null, "bob"),
+            new BatchRequest("green-owl-7", 10L, null, null, null, "carol"));
+    postBatch(batch).expectStatus().isAccepted();
+
+    postBatch(batch)
+        .expectStatus()
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+        .expectHeader()
+        .exists("Retry-After");
+    putTimer("green-owl-7").expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+  }
+
+  @Test
+  void rejectsConnectionsToAFullRoom() {
+    var first =
+        webTestClient.get().uri("/red-boar-42/events").exchange().returnResult(String.class);
+
+    StepVerifier.create(first.getResponseBody())
+        .expectNextCount(1)
+        .then(
+            () ->
+                webTestClient
+                    .get()
+                    .uri("/red-boar-42/events")
+                    .exchange()
+                    .expectStatus()
+                    .isEqualTo(HttpStatus.TOO_MANY_REQUESTS))
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+    assertThat(first.getStatus()).isEqualTo(HttpStatus.OK);
+  }
+
+  private WebTestClient.ResponseSpec postBatch(List<BatchRequest> batch) {
+    return webTestClient
+        .post()
+        .uri("/batch")
+        .contentType(APPLICATION_JSON)
+        .bodyValue(batch)
+        .exchange();
+  }
+
+  private WebTestClient.ResponseSpec putTimer(String room) {
+    return webTestClient
+        .put()
+        .uri("/" + room)
+        .contentType(APPLICATION_JSON)
+        .bodyValue(new PutTimerRequest(10L, null, "alice"))
+        .exchange();
+  }
+}
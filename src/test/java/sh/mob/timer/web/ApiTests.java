@@ -1,10 +1,12 @@
 package sh.mob.timer.web;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,12 +15,17 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webtestclient.autoconfigure.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.RoomApiController.BatchRequest;
 import sh.mob.timer.web.RoomApiController.PutTimerRequest;
 
 @SpringBootTest
@@ -58,6 +65,29 @@ class ApiTests {
     webTestClient.get().uri("/big-boar-37").exchange().expectStatus().isOk();
   }
 
+  @Test
+  void roomPageShowsItsName() {
+    webTestClient
+        .get()
+        .uri("/big-boar-37")
+        .exchange()
+        .expectBody(String.class)
+        .value(
+            body ->
+                assertThat(body)
+                    .contains("<title>00:00 #big-boar-37</title>")
+                    .contains("let room = 'big-boar-37';")
+                    .doesNotContain(PrerenderedPage.PLACEHOLDER));
+  }
+
+  @Test
+  void readingDoesNotCreateRooms() {
+    webTestClient.get().uri("/big-boar-37").exchange().expectStatus().isOk();
+    webTestClient.get().uri("/big-boar-37/goal").exchange().expectStatus().isNoContent();
+
+    assertThat(roomRepository.count()).isZero();
+  }
+
   @Test
   void putTimer() {
     var now = "2020-01-24T06:00:00Z";
@@ -91,6 +121,155 @@ class ApiTests {
         .verify();
   }
 
+  @Test
+  void resumeEventStreamAfterLastEventId() {
+    Mockito.when(clock.instant()).thenReturn(Instant.parse("2020-01-24T06:00:00Z"));
+    putTimer("alice");
+    putTimer("bob");
+
+    var events = eventStream(null).take(3).collectList().block();
+
+    assertThat(events)
+        .extracting(ServerSentEvent::event)
+        .containsExactly("INITIAL_HISTORY", "TIMER_REQUEST", "GOAL_REQUEST");
+    var lastEventId = events.get(1).id();
+    assertThat(lastEventId).endsWith("-2");
+
+    putTimer("carol");
+    putTimer("dave");
+
+    StepVerifier.create(eventStream(lastEventId))
+        .assertNext(event -> assertThat(event.data()).contains("\"user\":\"carol\""))
+        .assertNext(event -> assertThat(event.data()).contains("\"user\":\"dave\""))
+        .thenCancel()
+        .verify();
+    StepVerifier.create(eventStream("0-1"))
+        .assertNext(event -> assertThat(event.event()).isEqualTo("INITIAL_HISTORY"))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  void batchAppliesRequestsInOrder() {
+    Mockito.when(clock.instant()).thenReturn(Instant.parse("2020-01-24T06:00:00Z"));
+
+    StepVerifier.create(eventStream(null))
+        .expectNextCount(3)
+        .then(
+            () ->
+                webTestClient
+                    .post()
+                    .uri("/batch")
+                    .contentType(APPLICATION_JSON)
+                    .bodyValue(
+                        List.of(
+                            new BatchRequest("big-boar-37", 10L, null, null, null, "alice"),
+                            new BatchRequest("other-room", 10L, null, null, null, "alice"),
+                            new BatchRequest("big-boar-37", 10L, null, null, null, "bob"),
+                            new BatchRequest("big-boar-37", null, null, "Ship", null, "bob")))
+                    .exchange()
+                    .expectStatus()
+                    .isAccepted())
+        .assertNext(event -> assertThat(event.data()).contains("\"user\":\"alice\""))
+        .assertNext(
+            event ->
+                assertThat(event.data())
+                    .contains("\"user\":\"bob\"")
+                    .contains("\"nextUser\":\"alice\""))
+        .assertNext(event -> assertThat(event.event()).isEqualTo("GOAL_REQUEST"))
+        .thenCancel()
+        .verify();
+    assertThat(roomRepository.get("other-room").lastTimerRequest()).isPresent();
+
+    webTestClient
+        .post()
+        .uri("/batch")
+        .contentType(APPLICATION_JSON)
+        .bodyValue(List.of(new BatchRequest("big/boar", 10L, null, null, null, "alice")))
+        .exchange()
+        .expectStatus()
+        .isBadRequest();
+  }
+
+  @Test
+  void eventStreamInCompactEncoding() {
+    Mockito.when(clock.instant()).thenReturn(Instant.parse("2020-01-24T06:00:00Z"));
+    putTimer("alice");
+
+    var events =
+        webTestClient
+            .get()
+            .uri("/big-boar-37/events?encoding=compact")
+            .accept(TEXT_EVENT_STREAM)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+            .getResponseBody()
+            .take(2)
+            .collectList()
+            .block();
+
+    var timerRequest =
+        (TimerRequest)
+            CompactEncoding.decode(
+                "TIMER_REQUEST", Base64.getDecoder().decode(events.get(1).data()));
+    assertThat(timerRequest.getUser()).isEqualTo("alice");
+    assertThat(timerRequest.getRequested()).isEqualTo(Instant.parse("2020-01-24T06:00:00Z"));
+  }
+
+  private void putTimer(String user) {
+    webTestClient
+        .put()
+        .uri("/big-boar-37")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new PutTimerRequest(10L, null, user))
+        .exchange()
+        .expectStatus()
+        .isAccepted();
+  }
+
+  private Flux<ServerSentEvent<String>> eventStream(String lastEventId) {
+    return webTestClient
+        .get()
+        .uri("/big-boar-37/events")
+        .accept(TEXT_EVENT_STREAM)
+        .headers(
+            headers -> {
+              if (lastEventId != null) {
+                headers.set("Last-Event-ID", lastEventId);
+              }
+            })
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+        .getResponseBody();
+  }
+
+  @Test
+  void getStats() {
+    Mockito.when(clock.instant()).thenReturn(Instant.parse("2020-01-24T06:00:00Z"));
+
+    webTestClient
+        .put()
+        .uri("/big-boar-37")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new PutTimerRequest(1439L, null, "alice"))
+        .exchange()
+        .expectStatus()
+        .isAccepted();
+
+    webTestClient
+        .get()
+        .uri("/stats")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody(String.class)
+        .value(html -> assertThat(html).contains("<td>1439</td>"));
+  }
+
   @Test
   void putGoal() throws Exception {
     var now = "2020-01-24T07:00:00Z";
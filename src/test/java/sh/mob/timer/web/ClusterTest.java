@@ -0,0 +1,112 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import sh.mob.timer.web.Room.TimerRequest;
+import tools.jackson.databind.json.JsonMapper;
+
+class ClusterTest {
+
+  private static final List<String> NODES = List.of("node-a", "node-b", "node-c");
+
+  private final RoomBus bus = new LoopbackRoomBus();
+  private final Cluster clusterA = new Cluster("node-a", NODES, 128, bus);
+  private final Cluster clusterB = new Cluster("node-b", NODES, 128, bus);
+  private final RoomRepository nodeA = newRoomRepository(clusterA);
+  private final RoomRepository nodeB = newRoomRepository(clusterB);
+
+  @BeforeEach
+  void join() {
+    clusterA.join(nodeA);
+    clusterB.join(nodeB);
+  }
+
+  @AfterEach
+  void leave() {
+    clusterA.destroy();
+    clusterB.destroy();
+  }
+
+  @Test
+  void forwardsRequestsAndEventsToTheOwner() {
+    var room = roomOwnedBy(clusterB);
+
+    nodeA.ownerOf(room).addTimer(room, 10L, "alice", Instant.now()).block();
+    nodeA.ownerOf(room).setGoal(room, "Ship it", "alice", Instant.now()).block();
+
+    assertThat(nodeA.count()).isZero();
+    assertThat(nodeB.count()).isEqualTo(1);
+    assertThat(nodeA.ownerOf(room).currentGoal(room).goal()).isEqualTo("Ship it");
+    StepVerifier.create(nodeA.ownerOf(room).frames(room, null))
+        .assertNext(frame -> assertThat(frame.event()).isEqualTo("INITIAL_HISTORY"))
+        .assertNext(frame -> assertThat(frame.event()).isEqualTo("TIMER_REQUEST"))
+        .assertNext(frame -> assertThat(frame.event()).isEqualTo("GOAL_REQUEST"))
+        .then(() -> nodeB.ownerOf(room).addTimer(room, 5L, "bob", Instant.now()).block())
+        .assertNext(frame -> assertThat(((TimerRequest) frame.data()).getUser()).isEqualTo("bob"))
+        .then(() -> assertThat(nodeB.countConnections()).isEqualTo(1))
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+    assertThat(nodeB.countConnections()).isZero();
+  }
+
+  @Test
+  void refusesToStartWhenANodeIsNotReachable() {
+    assertThatThrownBy(clusterA::checkReachable)
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("[node-c]");
+  }
+
+  @Test
+  void spreadsRoomsEvenlyAndKeepsOwnersWhenANodeIsAdded() {
+    var twoNodes = new HashRing(List.of("node-a", "node-b"), 128);
+    var threeNodes = new HashRing(NODES, 128);
+    var rooms = IntStream.range(0, 30_000).mapToObj(i -> "room-" + i).toList();
+
+    var roomsPerNode = new HashMap<String, Integer>();
+    rooms.forEach(room -> roomsPerNode.merge(threeNodes.owner(room), 1, Integer::sum));
+    var moved = rooms.stream().filter(room -> !twoNodes.owner(room).equals(threeNodes.owner(room)));
+
+    assertThat(roomsPerNode.values())
+        .allSatisfy(count -> assertThat(count).isBetween(8_000, 12_000));
+    assertThat(moved).allSatisfy(room -> assertThat(threeNodes.owner(room)).isEqualTo("node-c"));
+  }
+
+  private static String roomOwnedBy(Cluster cluster) {
+    return IntStream.range(0, 1_000)
+        .mapToObj(i -> "room-" + i)
+        .filter(cluster::owns)
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static RoomRepository newRoomRepository(Cluster cluster) {
+    return new RoomRepository(
+        new RoomNameGenerator(),
+        new SseFrameEncoder(JsonMapper.builder().build()),
+        Optional.empty(),
+        Optional.of(cluster),
+        Schedulers.immediate(),
+        Duration.ofHours(24),
+        1_000,
+        16,
+        8,
+        Duration.ofSeconds(30),
+        Duration.ZERO,
+        1_000,
+        0,
+        new SimpleMeterRegistry());
+  }
+}
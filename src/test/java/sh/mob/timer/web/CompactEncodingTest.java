@@ -0,0 +1,83 @@
+package sh.mob.timer.web;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import sh.mob.timer.web.Room.Goal;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+import tools.jackson.databind.json.JsonMapper;
+
+class CompactEncodingTest {
+
+  private final SseFrameEncoder encoder = new SseFrameEncoder(JsonMapper.builder().build());
+
+  @Test
+  void roundTripsHistoriesWithMillisecondPrecision() {
+    var history = new ArrayList<TimerRequest>();
+    var requested = Instant.parse("2024-05-01T09:00:00.123456Z");
+    var users = List.of("alice", "bob", "carol", "dave");
+    for (int i = 0; i < 200; i++) {
+      history.add(
+          new TimerRequest(
+              (long) i % 20,
+              requested.plusSeconds(i * 317L),
+              users.get(i % 4),
+              users.get((i + 1) % 4),
+              i % 10 == 0 ? TimerType.BREAKTIMER : TimerType.TIMER));
+    }
+    history.add(Room.NULL_TIMER_REQUEST);
+
+    var json = encoder.encode("INITIAL_HISTORY", history);
+    var compact = encoder.compact(json);
+    var decoded = decode("INITIAL_HISTORY", compact);
+
+    assertThat(decoded).isEqualTo(truncatedToMillis(history));
+    assertThat(compact.length()).isLessThan(json.length() / 4);
+    assertThat(encoder.compact(json)).isSameAs(compact);
+  }
+
+  @Test
+  void roundTripsGoalsAndKeepsTheEventIdOfCombinedFrames() {
+    var goal = new Goal("Ship it 🚀", "alice", Instant.parse("2024-05-01T09:00:00Z"));
+    var first = encoder.encode(new EventId(7, 1), "GOAL_REQUEST", goal);
+    var second = encoder.encode(new EventId(7, 2), "GOAL_REQUEST", Goal.deleted("bob", null));
+
+    var compact = encoder.compact(encoder.combine(List.of(first, second)));
+
+    assertThat(compact.id()).isEqualTo(new EventId(7, 2));
+    assertThat(compact.parts()).hasSize(2);
+    assertThat(decode("GOAL_REQUEST", compact.parts().get(0))).isEqualTo(goal);
+    assertThat(decode("GOAL_REQUEST", compact.parts().get(1)))
+        .isEqualTo(Goal.deleted("bob", null));
+  }
+
+  private static Object decode(String event, SseFrame frame) {
+    var bytes = new ByteArrayOutputStream();
+    frame.writeTo(bytes);
+    var text = bytes.toString(UTF_8);
+    var data = text.substring(text.indexOf("data:") + 5).strip();
+    return CompactEncoding.decode(event, Base64.getDecoder().decode(data));
+  }
+
+  private static List<TimerRequest> truncatedToMillis(List<TimerRequest> history) {
+    return history.stream()
+        .map(
+            timerRequest ->
+                new TimerRequest(
+                    timerRequest.getTimer(),
+                    timerRequest.getRequested() == null
+                        ? null
+                        : Instant.ofEpochMilli(timerRequest.getRequested().toEpochMilli()),
+                    timerRequest.getUser(),
+                    timerRequest.getNextUser(),
+                    timerRequest.getType()))
+        .toList();
+  }
+}
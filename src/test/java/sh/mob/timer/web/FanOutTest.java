@@ -0,0 +1,100 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+import tools.jackson.databind.json.JsonMapper;
+
+class FanOutTest {
+
+  private final SseFrameEncoder encoder = new SseFrameEncoder(JsonMapper.builder().build());
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final RoomMetrics metrics = new RoomMetrics(meterRegistry);
+  private final Object lock = new Object();
+
+  @Test
+  void conflatesEventsOfTheSameKindForSlowSubscribers() {
+    var fanOut = new FanOut(lock, 3, Duration.ofMinutes(1), metrics);
+
+    StepVerifier.create(fanOut.subscribe(() -> List.of(frame(1, "INITIAL_HISTORY"))), 0)
+        .then(
+            () -> {
+              emit(fanOut, frame(2, "TIMER_REQUEST"));
+              emit(fanOut, frame(3, "GOAL_REQUEST"));
+              emit(fanOut, frame(4, "TIMER_REQUEST"));
+              emit(fanOut, frame(5, "TIMER_REQUEST"));
+            })
+        .thenRequest(Long.MAX_VALUE)
+        .assertNext(frame -> assertThat(frame.sequence()).isEqualTo(1))
+        .assertNext(frame -> assertThat(frame.sequence()).isEqualTo(3))
+        .assertNext(frame -> assertThat(frame.sequence()).isEqualTo(5))
+        .then(() -> emit(fanOut, frame(6, "TIMER_REQUEST")))
+        .assertNext(frame -> assertThat(frame.sequence()).isEqualTo(6))
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(meterRegistry.get("timer.events.conflated").counter().count()).isEqualTo(2);
+  }
+
+  @Test
+  void disconnectsInsteadOfDroppingCatchUpFrames() {
+    var fanOut = new FanOut(lock, 2, Duration.ofMinutes(1), metrics);
+    var catchUp = List.of(frame(1, "INITIAL_HISTORY"), frame(2, "TIMER_REQUEST"));
+
+    StepVerifier.create(fanOut.subscribe(() -> catchUp), 0)
+        .then(() -> emit(fanOut, frame(3, "TIMER_REQUEST")))
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(meterRegistry.get("timer.events.conflated").counter().count()).isZero();
+    assertThat(meterRegistry.get("timer.subscribers.disconnected").counter().count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void disconnectsSubscribersThatStayBehindWithoutHoldingBackOthers() throws Exception {
+    var fanOut = new FanOut(lock, 1, Duration.ZERO, metrics);
+    var fast = fanOut.subscribe(List::of);
+
+    StepVerifier.create(fanOut.subscribe(List::of), 0)
+        .then(
+            () -> {
+              emit(fanOut, frame(1, "TIMER_REQUEST"));
+              emit(fanOut, frame(2, "TIMER_REQUEST"));
+            })
+        .then(() -> sleep(Duration.ofMillis(2)))
+        .then(() -> emit(fanOut, frame(3, "TIMER_REQUEST")))
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+
+    StepVerifier.create(fast)
+        .then(() -> emit(fanOut, frame(4, "TIMER_REQUEST")))
+        .assertNext(frame -> assertThat(frame.sequence()).isEqualTo(4))
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+    assertThat(meterRegistry.get("timer.subscribers.disconnected").counter().count())
+        .isEqualTo(1);
+  }
+
+  private void emit(FanOut fanOut, SseFrame frame) {
+    synchronized (lock) {
+      fanOut.emit(frame);
+    }
+  }
+
+  private SseFrame frame(long sequence, String event) {
+    return encoder.encode(new EventId(1L, sequence), event, sequence);
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
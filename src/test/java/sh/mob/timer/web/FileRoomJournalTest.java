@@ -0,0 +1,184 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+import sh.mob.timer.web.Room.Goal;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+import tools.jackson.databind.json.JsonMapper;
+
+class FileRoomJournalTest {
+
+  private static final Duration RETENTION = Duration.ofHours(24);
+  private static final Instant NOW = Instant.parse("2024-03-01T10:00:00Z");
+
+  private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+  @TempDir Path directory;
+
+  @Test
+  void restoresRoomsAfterRestart() throws Exception {
+    var first = new TimerRequest(10L, NOW, "alice", null, TimerType.TIMER);
+    var second = new TimerRequest(5L, NOW.plusSeconds(60), "bob", "alice", TimerType.BREAKTIMER);
+    var goal = new Goal("Ship it", "alice", NOW);
+    var journal = openJournal();
+    journal.timerRequestAdded("big-boar-37", first);
+    journal.goalChanged("big-boar-37", goal);
+    journal.timerRequestAdded("other-room", first);
+    journal.timerRequestAdded("big-boar-37", second);
+    journal.destroy();
+
+    var reopened = openJournal();
+
+    assertThat(reopened.contains("big-boar-37")).isTrue();
+    assertThat(reopened.contains("unknown")).isFalse();
+    assertThat(reopened.restore("unknown", NOW.minus(RETENTION))).isEmpty();
+    var restored = reopened.restore("big-boar-37", NOW.minus(RETENTION)).orElseThrow();
+    assertThat(restored.history()).containsExactly(first, second);
+    assertThat(restored.goal()).isEqualTo(goal);
+    reopened.destroy();
+  }
+
+  @Test
+  void restoresEventsThatAreNotWrittenYet() throws Exception {
+    var first = new TimerRequest(10L, NOW, "alice", null, TimerType.TIMER);
+    var second = new TimerRequest(5L, NOW.plusSeconds(60), "bob", "alice", TimerType.TIMER);
+    var goal = new Goal("Ship it", "alice", NOW);
+    var journal = openJournal();
+    journal.timerRequestAdded("big-boar-37", first);
+    journal.flush();
+    journal.timerRequestAdded("big-boar-37", second);
+    journal.goalChanged("big-boar-37", goal);
+    journal.timerRequestAdded("new-room", first);
+
+    assertThat(journal.contains("new-room")).isTrue();
+    var restored = journal.restore("big-boar-37", NOW.minus(RETENTION)).orElseThrow();
+    assertThat(restored.history()).containsExactly(first, second);
+    assertThat(restored.goal()).isEqualTo(goal);
+    journal.flush();
+    assertThat(journal.restore("big-boar-37", NOW.minus(RETENTION)).orElseThrow().history())
+        .containsExactly(first, second);
+    journal.destroy();
+  }
+
+  @Test
+  void compactionDropsRoomsWithoutRecentActivity() throws Exception {
+    var old = new TimerRequest(10L, NOW.minus(Duration.ofHours(48)), "alice", null, TimerType.TIMER);
+    var recent = new TimerRequest(10L, NOW, "bob", null, TimerType.TIMER);
+    var oldGoal = new Goal("Old goal", "alice", NOW.minus(Duration.ofHours(48)));
+    var journal = openJournal();
+    journal.timerRequestAdded("stale-room", old);
+    journal.timerRequestAdded("busy-room", old);
+    journal.goalChanged("busy-room", oldGoal);
+    journal.timerRequestAdded("busy-room", recent);
+
+    journal.compact(NOW.minus(RETENTION));
+    journal.timerRequestAdded("busy-room", recent);
+    journal.destroy();
+
+    try (var files = Files.list(directory)) {
+      assertThat(files.map(file -> file.getFileName().toString()))
+          .containsExactlyInAnyOrder("snapshot-1.log", "journal-1.log");
+    }
+    var reopened = openJournal();
+    assertThat(reopened.contains("stale-room")).isFalse();
+    var restored = reopened.restore("busy-room", NOW.minus(RETENTION)).orElseThrow();
+    assertThat(restored.history()).containsExactly(recent, recent);
+    assertThat(restored.goal()).isEqualTo(oldGoal);
+    reopened.destroy();
+  }
+
+  @Test
+  void ignoresTornLines() throws Exception {
+    var timerRequest = new TimerRequest(10L, NOW, "alice", null, TimerType.TIMER);
+    var journal = openJournal();
+    journal.timerRequestAdded("big-boar-37", timerRequest);
+    journal.destroy();
+    Files.writeString(
+        directory.resolve("journal-0.log"), "big-boar-37\t{\"timer\":", StandardOpenOption.APPEND);
+
+    var reopened = openJournal();
+    reopened.timerRequestAdded("big-boar-37", timerRequest);
+    reopened.flush();
+
+    assertThat(reopened.restore("big-boar-37", NOW.minus(RETENTION)).orElseThrow().history())
+        .containsExactly(timerRequest, timerRequest);
+    reopened.destroy();
+  }
+
+  @Test
+  void skipsLinesWithoutARoom() throws Exception {
+    var timerRequest = new TimerRequest(10L, NOW, "alice", null, TimerType.TIMER);
+    var journal = openJournal();
+    journal.timerRequestAdded("big-boar-37", timerRequest);
+    journal.destroy();
+    Files.writeString(
+        directory.resolve("journal-0.log"), "{\"timer\":10}\n", StandardOpenOption.APPEND);
+
+    var reopened = openJournal();
+    reopened.timerRequestAdded("big-boar-37", timerRequest);
+    reopened.flush();
+
+    assertThat(reopened.restore("big-boar-37", NOW.minus(RETENTION)).orElseThrow().history())
+        .containsExactly(timerRequest, timerRequest);
+    reopened.destroy();
+  }
+
+  @Test
+  void repositoryRestoresRoomsOnFirstAccess() throws Exception {
+    var now = Instant.now();
+    var journal = openJournal();
+    var roomRepository = openRepository(journal);
+    roomRepository.get("big-boar-37").addTimer(10L, "alice", now);
+    roomRepository.get("big-boar-37").addTimer(10L, "bob", now);
+    roomRepository.get("big-boar-37").setGoal("Ship it", "alice", now);
+    journal.destroy();
+
+    var reopened = openJournal();
+    var restartedRepository = openRepository(reopened);
+    assertThat(restartedRepository.count()).isZero();
+
+    var room = restartedRepository.get("big-boar-37");
+    assertThat(restartedRepository.count()).isEqualTo(1);
+    assertThat(room.historyWithoutLatest()).hasSize(1);
+    assertThat(room.lastTimerRequest().map(TimerRequest::getNextUser)).contains("alice");
+    assertThat(room.currentGoal().goal()).isEqualTo("Ship it");
+    assertThat(restartedRepository.countActiveTimers()).isEqualTo(1);
+    room.addTimer(10L, "alice", now);
+    assertThat(room.lastTimerRequest().map(TimerRequest::getNextUser)).contains("bob");
+    reopened.destroy();
+  }
+
+  private FileRoomJournal openJournal() throws IOException {
+    return new FileRoomJournal(directory, RETENTION, Duration.ofDays(1), jsonMapper);
+  }
+
+  private RoomRepository openRepository(RoomJournal journal) {
+    return new RoomRepository(
+        new RoomNameGenerator(),
+        new SseFrameEncoder(jsonMapper),
+        Optional.of(journal),
+        Optional.empty(),
+        Schedulers.immediate(),
+        RETENTION,
+        1_000,
+        16,
+        8,
+        Duration.ofSeconds(30),
+        Duration.ZERO,
+        1_000,
+        0,
+        new SimpleMeterRegistry());
+  }
+}
@@ -0,0 +1,29 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import sh.mob.timer.web.Room.TimerRequest;
+import tools.jackson.databind.json.JsonMapper;
+
+class KeepAliveTest {
+
+  @Test
+  void allStreamsShareTheSameKeepAliveFrame() {
+    var encoder = new SseFrameEncoder(JsonMapper.builder().build());
+    var keepAlive = new KeepAlive(encoder, Duration.ofMillis(10));
+
+    var events =
+        Flux.merge(IntStream.range(0, 1_000).mapToObj(i -> keepAlive.frames().next()).toList())
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+    assertThat(events).hasSize(1_000);
+    assertThat(events).allSatisfy(event -> assertThat(event).isSameAs(events.get(0)));
+    assertThat(events.get(0).event()).isEqualTo("KEEP_ALIVE");
+    assertThat(events.get(0).data()).isEqualTo(new TimerRequest(null, null, null, null, null));
+  }
+}
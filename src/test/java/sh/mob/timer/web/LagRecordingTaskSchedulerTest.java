@@ -0,0 +1,66 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+class LagRecordingTaskSchedulerTest {
+
+  @Test
+  void recordsHowLongAJobWaitedForASlowOne() throws InterruptedException {
+    var pool = new ThreadPoolTaskScheduler();
+    pool.initialize();
+    var registry = new SimpleMeterRegistry();
+    var scheduler = new LagRecordingTaskScheduler(pool, registry);
+    var ticks = new CountDownLatch(5);
+    try {
+      scheduler.scheduleAtFixedRate(named("Stats.tick", ticks::countDown), Duration.ofMillis(50));
+      scheduler.scheduleAtFixedRate(
+          named("Rooms.sweep", () -> sleep(300)),
+          Instant.now().plusMillis(100),
+          Duration.ofSeconds(1));
+
+      assertThat(ticks.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      pool.shutdown();
+    }
+
+    var lag = registry.get("timer.scheduler.lag").tag("job", "Stats.tick").timer();
+    assertThat(lag.max(TimeUnit.MILLISECONDS)).isGreaterThan(150);
+  }
+
+  @Test
+  void namesJobsByClassAndMethod() {
+    assertThat(LagRecordingTaskScheduler.jobName(named("sh.mob.timer.web.Stats.tick", () -> {})))
+        .isEqualTo("Stats.tick");
+    assertThat(LagRecordingTaskScheduler.jobName(named("sweep", () -> {}))).isEqualTo("sweep");
+  }
+
+  private static Runnable named(String name, Runnable task) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        task.run();
+      }
+
+      @Override
+      public String toString() {
+        return name;
+      }
+    };
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
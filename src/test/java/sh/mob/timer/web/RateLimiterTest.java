@@ -0,0 +1,60 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void allowsBurstsAndThenTheRate() {
+    var limiter = new RateLimiter(2, 3, 16);
+    long now = System.nanoTime();
+
+    assertThat(limiter.tryAcquire(1, now)).isZero();
+    assertThat(limiter.tryAcquire(1, now)).isZero();
+    assertThat(limiter.tryAcquire(1, now)).isZero();
+    assertThat(limiter.tryAcquire(1, now)).isEqualTo(SECOND / 2);
+    assertThat(limiter.tryAcquire(2, now)).as("another key").isZero();
+
+    assertThat(limiter.tryAcquire(1, now + SECOND / 2)).isZero();
+    assertThat(limiter.tryAcquire(1, now + SECOND / 2)).isEqualTo(SECOND / 2);
+    assertThat(limiter.tryAcquire(1, now + 10 * SECOND)).isZero();
+    assertThat(limiter.tryAcquire(1, now + 10 * SECOND)).isZero();
+    assertThat(limiter.tryAcquire(1, now + 10 * SECOND)).isZero();
+    assertThat(limiter.tryAcquire(1, now + 10 * SECOND)).isPositive();
+  }
+
+  @Test
+  void chargesLargeRequestsAsDebt() {
+    var limiter = new RateLimiter(2, 3, 16);
+    long now = System.nanoTime();
+
+    assertThat(limiter.tryAcquire(1, 10, now)).isZero();
+    assertThat(limiter.tryAcquire(1, now)).isEqualTo(4 * SECOND);
+    assertThat(limiter.tryAcquire(1, now + 4 * SECOND)).isZero();
+  }
+
+  @Test
+  void givesBackReleasedTokens() {
+    var limiter = new RateLimiter(2, 1, 16);
+    long now = System.nanoTime();
+
+    assertThat(limiter.tryAcquire(1, now)).isZero();
+    assertThat(limiter.tryAcquire(1, now)).isPositive();
+    limiter.release(1, 1);
+    assertThat(limiter.tryAcquire(1, now)).isZero();
+  }
+
+  @Test
+  void allowsEverythingWithoutARate() {
+    var limiter = new RateLimiter(0, 1, 16);
+
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(limiter.tryAcquire(1, System.nanoTime())).isZero();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RoomNameGeneratorTest {
+
+  @Test
+  void drawsEveryNameOnceUntilTheSpaceIsFull() {
+    var generator = new RoomNameGenerator(List.of("big", "red"), List.of("boar", "frog", "boar"));
+    var names = new HashSet<String>();
+
+    for (int i = 0; i < generator.size(); i++) {
+      var name = generator.randomName(candidate -> false);
+      generator.occupy(name);
+      names.add(name);
+    }
+
+    assertThat(generator.size()).isEqualTo(2 * 2 * 90);
+    assertThat(names).hasSize(generator.size()).contains("big-boar-10", "red-frog-99");
+    assertThat(generator.usage()).isEqualTo(1.0);
+    assertThatIllegalStateException().isThrownBy(() -> generator.randomName(candidate -> false));
+
+    generator.release("red-frog-37");
+    generator.release("not-a-generated-name");
+    assertThat(generator.randomName(candidate -> false)).isEqualTo("red-frog-37");
+    assertThat(generator.usage()).isEqualTo(359 / 360.0);
+  }
+
+  @Test
+  void skipsNamesTheCallerKnowsAreTaken() {
+    var generator = new RoomNameGenerator(List.of("big"), List.of("boar"));
+
+    var name = generator.randomName(candidate -> !candidate.equals("big-boar-37"));
+
+    assertThat(name).isEqualTo("big-boar-37");
+    assertThat(generator.usage()).isZero();
+  }
+}
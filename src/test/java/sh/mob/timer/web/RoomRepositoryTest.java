@@ -0,0 +1,379 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import sh.mob.timer.web.Room.TimerRequest;
+import tools.jackson.databind.json.JsonMapper;
+
+class RoomRepositoryTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final RoomRepository roomRepository = newRoomRepository(1_000);
+
+  @Test
+  void evictsRoomsWhoseHistoryExpired() {
+    var now = Instant.now();
+    roomRepository.get("expired").addTimer(10L, "alice", now);
+    roomRepository.get("recent").addTimer(10L, "alice", now.plus(Duration.ofHours(12)));
+
+    roomRepository.expireRooms(now.plus(Duration.ofHours(25))).block();
+
+    assertThat(roomRepository.count()).isEqualTo(1);
+    assertThat(roomRepository.get("recent").lastTimerRequest()).isPresent();
+    assertThat(meterRegistry.get("timer.rooms.evicted").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("timer.rooms.expiry.lag").gauge().value())
+        .isCloseTo(Duration.ofHours(1).toMillis(), within(1_000.0));
+  }
+
+  @Test
+  void keepsRoomsWithSubscribers() {
+    var now = Instant.now();
+    var room = roomRepository.get("subscribed");
+    room.addTimer(10L, "alice", now);
+    room.connectionOpened();
+
+    roomRepository.expireRooms(now.plus(Duration.ofHours(25))).block();
+
+    assertThat(roomRepository.count()).isEqualTo(1);
+    assertThat(room.lastTimerRequest()).isEmpty();
+
+    room.connectionClosed();
+    roomRepository.expireRooms(now.plus(Duration.ofHours(27))).block();
+
+    assertThat(roomRepository.count()).isZero();
+  }
+
+  @Test
+  void liveCountersMatchFullRecountUnderConcurrentLoad() throws Exception {
+    var rooms = IntStream.range(0, 50).mapToObj(i -> roomRepository.get("room-" + i)).toList();
+    var tasks = new ArrayList<Callable<Void>>();
+    for (int thread = 0; thread < 8; thread++) {
+      var random = new Random(thread);
+      tasks.add(
+          () -> {
+            var openConnections = new ArrayList<Room>();
+            for (int i = 0; i < 5_000; i++) {
+              var room = rooms.get(random.nextInt(rooms.size()));
+              switch (random.nextInt(5)) {
+                case 0 ->
+                    room.addTimer(
+                        (long) random.nextInt(3),
+                        "user" + random.nextInt(4),
+                        Instant.now().minusSeconds(random.nextInt(120)));
+                case 1 -> room.addBreaktimer((long) random.nextInt(3), "user" + random.nextInt(4));
+                case 2 -> roomRepository.expireActiveTimers(Instant.now());
+                case 3 -> {
+                  room.connectionOpened();
+                  openConnections.add(room);
+                }
+                default -> {
+                  if (!openConnections.isEmpty()) {
+                    openConnections.remove(openConnections.size() - 1).connectionClosed();
+                  }
+                }
+              }
+            }
+            return null;
+          });
+    }
+    try (var executor = Executors.newFixedThreadPool(tasks.size())) {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+
+    var now = Instant.now();
+    roomRepository.expireActiveTimers(now);
+
+    assertThat(roomRepository.countConnections())
+        .isEqualTo(rooms.stream().mapToLong(Room::subscriberCount).sum());
+    assertThat(roomRepository.countActiveTimers()).isEqualTo(countActiveTimers(rooms, now));
+
+    var tomorrow = now.plus(Duration.ofDays(1));
+    roomRepository.expireActiveTimers(tomorrow);
+
+    assertThat(roomRepository.countActiveTimers())
+        .isZero()
+        .isEqualTo(countActiveTimers(rooms, tomorrow));
+  }
+
+  @Test
+  void evictsRarelyUsedIdleRoomsWhenTheCacheIsFull() {
+    var roomRepository = newRoomRepository(10);
+    roomRepository.get("subscribed").connectionOpened();
+    roomRepository.get("running").addTimer(10L, "alice", Instant.now());
+    for (int i = 0; i < 5; i++) {
+      roomRepository.get("popular");
+    }
+
+    for (int i = 0; i < 100; i++) {
+      roomRepository.get("crawled-" + i);
+    }
+
+    assertThat(roomRepository.count()).isEqualTo(10);
+    assertThat(roomRepository.find("subscribed")).isPresent();
+    assertThat(roomRepository.find("running")).isPresent();
+    assertThat(roomRepository.find("popular")).isPresent();
+    assertThat(roomRepository.find("crawled-99")).isPresent();
+    assertThat(meterRegistry.get("timer.rooms.cache.evictions").counter().count()).isEqualTo(93);
+    assertThat(meterRegistry.get("timer.rooms.cache").tag("result", "miss").counter().count())
+        .isEqualTo(103);
+    assertThat(meterRegistry.get("timer.rooms.cache").tag("result", "hit").counter().count())
+        .isEqualTo(4);
+  }
+
+  @Test
+  void neverEvictsPinnedRooms() {
+    var roomRepository = newRoomRepository(10);
+    var pinned = roomRepository.acquire("pinned");
+
+    for (int i = 0; i < 100; i++) {
+      roomRepository.get("crawled-" + i);
+    }
+
+    assertThat(roomRepository.find("pinned")).containsSame(pinned);
+    pinned.unpin();
+    assertThat(pinned.retire()).isTrue();
+    assertThat(pinned.pin()).isFalse();
+  }
+
+  @Test
+  void expiresRoomsThatWereEvictedAndCameBack() {
+    var roomRepository = newRoomRepository(1);
+    roomRepository.get("big-boar-37");
+    roomRepository.get("other-room");
+    assertThat(roomRepository.find("big-boar-37")).isEmpty();
+    var room = roomRepository.get("big-boar-37");
+    assertThat(roomRepository.find("big-boar-37")).containsSame(room);
+
+    roomRepository.expireRooms(Instant.now().plus(Duration.ofHours(25))).block();
+
+    assertThat(roomRepository.count()).isZero();
+    assertThat(meterRegistry.get("timer.rooms.evicted").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void tagsConnectionsWithTheSizeOfTheirRoom() {
+    var room = roomRepository.get("big-boar-37");
+    for (int i = 0; i < 4; i++) {
+      room.connectionOpened();
+    }
+    roomRepository.get("small-room").connectionOpened();
+    room.connectionClosed();
+    room.addTimer(10L, "alice", Instant.now());
+
+    assertThat(activeConnections("1")).isEqualTo(1);
+    assertThat(activeConnections("2-3")).isEqualTo(3);
+    assertThat(activeConnections("4-7")).isZero();
+    assertThat(connectionCount("opened", "4-7")).isEqualTo(1);
+    assertThat(connectionCount("closed", "4-7")).isEqualTo(1);
+    assertThat(meterRegistry.get("timer.events.emitted").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("timer.events.fanout").counter().count()).isEqualTo(3);
+    assertThat(meterRegistry.get("timer.rooms").gauge().value()).isEqualTo(2);
+  }
+
+  @Test
+  void appliesTheChangesOfManyWritersToOneRoomOneAfterTheOther() throws Exception {
+    var received = new CopyOnWriteArrayList<SseFrame>();
+    var subscription =
+        roomRepository
+            .frames("big-boar-37", null)
+            .filter(frame -> frame.sequence() > 0)
+            .subscribe(received::add);
+    var start = Instant.now();
+    var tasks = new ArrayList<Callable<Void>>();
+    for (int writer = 0; writer < 16; writer++) {
+      var user = "user" + writer;
+      tasks.add(
+          () -> {
+            for (int i = 0; i < 250; i++) {
+              roomRepository.addTimer("big-boar-37", 10L, user, start.plusMillis(i)).block();
+            }
+            return null;
+          });
+    }
+    try (var executor = Executors.newFixedThreadPool(tasks.size())) {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+    subscription.dispose();
+
+    assertThat(received)
+        .extracting(SseFrame::sequence)
+        .isEqualTo(LongStream.rangeClosed(1, 4_000).boxed().toList());
+    // each writer's requests arrive in the order it sent them
+    var requestedByUser = new HashMap<String, Instant>();
+    for (var frame : received) {
+      var timerRequest = (TimerRequest) frame.data();
+      var previous = requestedByUser.put(timerRequest.getUser(), timerRequest.getRequested());
+      if (previous != null) {
+        assertThat(previous).isBefore(timerRequest.getRequested());
+      }
+    }
+    assertThat(meterRegistry.get("timer.events.emitted").counter().count()).isEqualTo(4_000);
+  }
+
+  @Test
+  void appliesTheChangesOfManyWritersAcrossThousandsOfRooms() throws Exception {
+    var roomRepository = newRoomRepository(10_000);
+    var tasks = new ArrayList<Callable<Void>>();
+    for (int writer = 0; writer < 16; writer++) {
+      var random = new Random(writer);
+      var user = "user" + writer;
+      tasks.add(
+          () -> {
+            for (int i = 0; i < 1_000; i++) {
+              var room = "room-" + random.nextInt(5_000);
+              roomRepository.addTimer(room, 10L, user, Instant.now()).block();
+            }
+            return null;
+          });
+    }
+    try (var executor = Executors.newFixedThreadPool(tasks.size())) {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+
+    var timerRequests =
+        IntStream.range(0, 5_000)
+            .mapToObj(i -> roomRepository.find("room-" + i))
+            .flatMap(Optional::stream)
+            .mapToLong(room -> room.historyWithoutLatest().size() + 1)
+            .sum();
+    assertThat(timerRequests).isEqualTo(16_000);
+    assertThat(meterRegistry.get("timer.events.emitted").counter().count()).isEqualTo(16_000);
+  }
+
+  @Test
+  void restoresRoomsOffTheirShard() {
+    var restoredOn = new CopyOnWriteArrayList<String>();
+    var journal =
+        new RoomJournal() {
+          @Override
+          public void timerRequestAdded(String room, TimerRequest timerRequest) {
+            restoredOn.add("added on " + Thread.currentThread().getName());
+          }
+
+          @Override
+          public void goalChanged(String room, Room.Goal goal) {}
+
+          @Override
+          public Optional<PersistedRoom> restore(String room, Instant cutoff) {
+            restoredOn.add("restored on " + Thread.currentThread().getName());
+            return Optional.empty();
+          }
+
+          @Override
+          public boolean contains(String room) {
+            return false;
+          }
+        };
+    var blockingScheduler = Schedulers.newSingle("blocking");
+    var roomRepository =
+        new RoomRepository(
+            new RoomNameGenerator(),
+            new SseFrameEncoder(JsonMapper.builder().build()),
+            Optional.of(journal),
+            Optional.empty(),
+            blockingScheduler,
+            Duration.ofHours(24),
+            1_000,
+            16,
+            8,
+            Duration.ofSeconds(30),
+            Duration.ZERO,
+            1_000,
+            0,
+            meterRegistry);
+
+    roomRepository.addTimer("big-boar-37", 10L, "alice", Instant.now()).block();
+
+    assertThat(restoredOn)
+        .satisfiesExactly(
+            restored -> assertThat(restored).startsWith("restored on blocking-"),
+            added -> assertThat(added).startsWith("added on room-shard-"));
+    roomRepository.destroy();
+    blockingScheduler.dispose();
+  }
+
+  @Test
+  void coalescesBurstsOfEventsWithinTheWindow() {
+    var roomRepository = newRoomRepository(1_000, Duration.ofMillis(50));
+    var now = Instant.now();
+
+    StepVerifier.create(roomRepository.frames("big-boar-37", null))
+        .expectNextCount(3)
+        .then(
+            () -> {
+              roomRepository.addTimer("big-boar-37", 10L, "alice", now).block();
+              roomRepository.addTimer("big-boar-37", 10L, "bob", now).block();
+              roomRepository.addTimer("big-boar-37", 10L, "carol", now).block();
+            })
+        .assertNext(
+            frame -> {
+              assertThat(frame.event()).isEqualTo("TIMER_REQUEST");
+              assertThat(frame.sequence()).isEqualTo(3);
+              assertThat((List<?>) frame.data()).hasSize(3);
+            })
+        .thenCancel()
+        .verify(Duration.ofSeconds(5));
+    assertThat(meterRegistry.get("timer.events.emitted").counter().count()).isEqualTo(1);
+  }
+
+  private double connectionCount(String event, String roomSize) {
+    return meterRegistry
+        .get("timer.connections." + event)
+        .tag("room.size", roomSize)
+        .counter()
+        .count();
+  }
+
+  private double activeConnections(String roomSize) {
+    return meterRegistry.get("timer.connections.active").tag("room.size", roomSize).gauge().value();
+  }
+
+  private RoomRepository newRoomRepository(int maxRooms) {
+    return newRoomRepository(maxRooms, Duration.ZERO);
+  }
+
+  private RoomRepository newRoomRepository(int maxRooms, Duration coalesceWindow) {
+    return new RoomRepository(
+        new RoomNameGenerator(),
+        new SseFrameEncoder(JsonMapper.builder().build()),
+        Optional.empty(),
+        Optional.empty(),
+        Schedulers.immediate(),
+        Duration.ofHours(24),
+        1_000,
+        16,
+        8,
+        Duration.ofSeconds(30),
+        coalesceWindow,
+        maxRooms,
+        0,
+        meterRegistry);
+  }
+
+  private static long countActiveTimers(List<Room> rooms, Instant now) {
+    return rooms.stream().filter(room -> room.isTimerActive(now)).count();
+  }
+}
@@ -0,0 +1,66 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.core.publisher.Mono;
+
+@SpringBootTest(
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = {"room.events.keep-alive=PT0.1S", "room.websocket.pong-timeout=PT0.5S"})
+class RoomWebSocketTest {
+
+  @LocalServerPort private int port;
+  @Autowired private RoomRepository roomRepository;
+
+  @Test
+  void sendsEventsAndExecutesCommandsOverOneConnection() {
+    var received = new CopyOnWriteArrayList<String>();
+    var connections = new AtomicLong();
+
+    new ReactorNettyWebSocketClient()
+        .execute(
+            URI.create("ws://localhost:" + port + "/big-boar-37/websocket"),
+            session -> {
+              var incoming =
+                  session
+                      .receive()
+                      .map(WebSocketMessage::getPayloadAsText)
+                      .publish()
+                      .autoConnect(2);
+              var commands =
+                  incoming
+                      .skip(2)
+                      .next()
+                      .map(message -> session.textMessage("{\"timer\":10,\"user\":\"alice\"}"));
+              // outlives the pong timeout, the client answers the pings of the server
+              var events =
+                  incoming
+                      .take(4)
+                      .doOnNext(received::add)
+                      .then(Mono.delay(Duration.ofSeconds(1)))
+                      .doOnNext(delay -> connections.set(roomRepository.countConnections()));
+              return session.send(commands).and(events);
+            })
+        .block(Duration.ofSeconds(10));
+
+    assertThat(received).hasSize(4);
+    assertThat(received.subList(0, 3))
+        .extracting(message -> message.substring(0, message.indexOf('\n')))
+        .isEqualTo(List.of("event:INITIAL_HISTORY", "event:TIMER_REQUEST", "event:GOAL_REQUEST"));
+    assertThat(received.get(3)).contains("event:TIMER_REQUEST").contains("\"user\":\"alice\"");
+    assertThat(roomRepository.get("big-boar-37").lastTimerRequest()).isPresent();
+    assertThat(connections).hasValue(1);
+  }
+}
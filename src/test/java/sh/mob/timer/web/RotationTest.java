@@ -0,0 +1,83 @@
+package sh.mob.timer.web;
+
+import static java.util.function.Predicate.not;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+
+class RotationTest {
+
+  private static final String[] USERS = {"alice", "bob", "carol", "dave", "", " ", null};
+
+  @Test
+  void nextUserMatchesFullHistoryScanOnRandomHistories() {
+    var random = new Random(4711);
+    for (int run = 0; run < 2_000; run++) {
+      var history = new ArrayList<TimerRequest>();
+      var rotation = new Rotation();
+      int length = random.nextInt(40);
+      for (int i = 0; i < length; i++) {
+        var user = randomUser(random, 1 + run % 4);
+        assertThat(rotation.nextUser(user))
+            .as("run %d, history %s, user %s", run, history, user)
+            .isEqualTo(findNextUserByScanning(history, user));
+
+        var type = random.nextInt(5) == 0 ? TimerType.BREAKTIMER : TimerType.TIMER;
+        var timerRequest = new TimerRequest(10L, Instant.EPOCH, user, null, type);
+        history.add(timerRequest);
+        rotation.add(timerRequest);
+      }
+
+      if (!history.isEmpty()) {
+        history.subList(0, random.nextInt(history.size() + 1)).clear();
+        rotation.rebuild(history);
+      }
+      for (String user : USERS) {
+        assertThat(rotation.nextUser(user))
+            .as("run %d after expiry, history %s, user %s", run, history, user)
+            .isEqualTo(findNextUserByScanning(history, user));
+      }
+    }
+  }
+
+  private static String randomUser(Random random, int numberOfNamedUsers) {
+    if (random.nextInt(10) == 0) {
+      return USERS[4 + random.nextInt(3)];
+    }
+    return USERS[random.nextInt(numberOfNamedUsers)];
+  }
+
+  /** The original algorithm of {@code Room.findNextUser}, kept as the reference. */
+  private static String findNextUserByScanning(List<TimerRequest> timerRequests, String user) {
+    if (timerRequests.isEmpty()) {
+      return null;
+    }
+
+    var users =
+        timerRequests.stream()
+            .filter(timerRequest -> timerRequest.getType() == TimerType.TIMER)
+            .map(TimerRequest::getUser)
+            .filter(Objects::nonNull)
+            .filter(not(String::isBlank))
+            .collect(Collectors.toList());
+
+    while (!users.isEmpty() && users.lastIndexOf(user) == users.size() - 1) {
+      users.remove(users.size() - 1);
+    }
+
+    if (users.isEmpty()) {
+      return null;
+    }
+
+    int nextIndexCandidate = users.lastIndexOf(user) + 1;
+    return users.get(nextIndexCandidate);
+  }
+}
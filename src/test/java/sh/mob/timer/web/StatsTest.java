@@ -0,0 +1,55 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import sh.mob.timer.web.Stats.Count;
+
+class StatsTest {
+
+  @Test
+  void concurrentIncrementsAreNotLost() throws Exception {
+    var stats = new Stats();
+    int threads = 16;
+    int incrementsPerThread = 10_000;
+    var start = new CountDownLatch(1);
+    try (var executor = Executors.newFixedThreadPool(threads)) {
+      for (int thread = 0; thread < threads; thread++) {
+        int breaktimer = thread % 2;
+        executor.submit(
+            () -> {
+              start.await();
+              for (int i = 0; i < incrementsPerThread; i++) {
+                stats.incrementTimer("big-boar-37", 10);
+                stats.incrementBreaktimer("big-boar-37", breaktimer);
+              }
+              return null;
+            });
+      }
+      start.countDown();
+      executor.shutdown();
+      assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+    }
+
+    assertThat(stats.getTimer()).containsExactly(new Count(10, threads * incrementsPerThread));
+    assertThat(stats.getBreaktimer())
+        .containsExactly(
+            new Count(0, threads / 2 * incrementsPerThread),
+            new Count(1, threads / 2 * incrementsPerThread));
+  }
+
+  @Test
+  void ignoresSmokeTestsAndClampsTimers() {
+    var stats = new Stats();
+
+    stats.incrementTimer("testroom-310a9c47-515c-4ad7-a229-ae8efbab7387", 10);
+    stats.incrementTimer("big-boar-37", -5);
+    stats.incrementTimer("big-boar-37", Stats.MAX_MINUTES + 1);
+
+    assertThat(stats.getTimer())
+        .containsExactly(new Count(0, 1), new Count(Stats.MAX_MINUTES, 1));
+  }
+}
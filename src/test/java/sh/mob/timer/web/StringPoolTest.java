@@ -0,0 +1,106 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+class StringPoolTest {
+
+  private static final SseFrameEncoder ENCODER = new SseFrameEncoder(JsonMapper.builder().build());
+  private static final RoomShards SHARDS = new RoomShards(1);
+
+  @Test
+  void sharesEqualStrings() {
+    var pool = new StringPool(16);
+
+    var alice = pool.intern(new String("alice"));
+
+    assertThat(pool.intern(new String("alice"))).isSameAs(alice);
+    assertThat(pool.intern(null)).isNull();
+    assertThat(new StringPool(0).intern(alice)).isSameAs(alice);
+    assertThatIllegalArgumentException().isThrownBy(() -> new StringPool(12));
+  }
+
+  /**
+   * 100,000 rooms of four members each, drawn from 500 names, with 5 timers and a goal per room.
+   * Counts the bytes of all distinct string instances the rooms hold, like a heap histogram would.
+   */
+  @Test
+  void roomsShareUserNamesAndGoals() {
+    long unpooled = stringBytesOfRooms(new StringPool(0));
+    long pooled = stringBytesOfRooms(new StringPool(1 << 16));
+
+    assertThat(pooled).isLessThan(unpooled / 10);
+  }
+
+  private static long stringBytesOfRooms(StringPool strings) {
+    var random = new Random(42);
+    var context =
+        new RoomContext(
+            16,
+            16,
+            8,
+            Duration.ofSeconds(30),
+            Duration.ZERO,
+            new LiveCounters(),
+            new RoomMetrics(new SimpleMeterRegistry()),
+            ENCODER,
+            strings,
+            RoomJournal.NONE,
+            SHARDS);
+    var now = Instant.now();
+    var rooms = new ArrayList<Room>();
+    for (int i = 0; i < 100_000; i++) {
+      var room = new Room("room-" + i, now, context);
+      var members = List.of(name(random), name(random), name(random), name(random));
+      for (int timer = 0; timer < 5; timer++) {
+        room.addTimer(10L, new String(members.get(timer % 4)), now);
+      }
+      room.setGoal(new String("Refactor the parser"), new String(members.get(0)), now);
+      rooms.add(room);
+    }
+
+    Set<String> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (var room : rooms) {
+      for (var timerRequest : room.historyWithoutLatest()) {
+        addIfPresent(distinct, timerRequest.getUser());
+        addIfPresent(distinct, timerRequest.getNextUser());
+      }
+      room.lastTimerRequest()
+          .ifPresent(
+              timerRequest -> {
+                addIfPresent(distinct, timerRequest.getUser());
+                addIfPresent(distinct, timerRequest.getNextUser());
+              });
+      addIfPresent(distinct, room.currentGoal().goal());
+      addIfPresent(distinct, room.currentGoal().user());
+    }
+    return distinct.stream().mapToLong(StringPoolTest::retainedBytes).sum();
+  }
+
+  private static String name(Random random) {
+    return "user-" + random.nextInt(500);
+  }
+
+  private static void addIfPresent(Set<String> strings, String value) {
+    if (value != null) {
+      strings.add(value);
+    }
+  }
+
+  /** A String header with its hash and coder, plus its Latin-1 byte array, 8-byte aligned. */
+  private static long retainedBytes(String value) {
+    return 24 + ((16 + value.length() + 7) & ~7);
+  }
+}
@@ -0,0 +1,72 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+
+class TimerHistoryTest {
+
+  @Test
+  void snapshotsAreNotAffectedByLaterAppendsAndExpiry() {
+    var history = new TimerHistory(1_000);
+    for (int i = 0; i < 200; i++) {
+      history.append(timerRequest(i));
+    }
+    var snapshot = history.snapshotWithoutLatest();
+
+    history.expire(Instant.ofEpochSecond(150));
+    for (int i = 200; i < 300; i++) {
+      history.append(timerRequest(i));
+    }
+
+    assertThat(snapshot).hasSize(199).containsExactlyElementsOf(requests(0, 199));
+    assertThat(history.snapshot()).containsExactlyElementsOf(requests(150, 300));
+    assertThat(history.latest()).isEqualTo(timerRequest(299));
+  }
+
+  @Test
+  void expireRemovesEntriesRequestedBeforeTheCutoff() {
+    var history = new TimerHistory(1_000);
+    for (int i = 0; i < 100; i++) {
+      history.append(timerRequest(i));
+    }
+
+    assertThat(history.expire(Instant.ofEpochSecond(70))).isEqualTo(70);
+    assertThat(history.oldest()).isEqualTo(timerRequest(70));
+    assertThat(history.expire(Instant.ofEpochSecond(1_000))).isEqualTo(30);
+    assertThat(history.isEmpty()).isTrue();
+    assertThat(history.latest()).isNull();
+    assertThat(history.snapshotWithoutLatest()).isEmpty();
+  }
+
+  @Test
+  void dropsTheOldestChunkWhenFull() {
+    var capacity = 3 * TimerHistory.CHUNK_SIZE;
+    var history = new TimerHistory(capacity);
+    for (int i = 0; i < capacity; i++) {
+      assertThat(history.append(timerRequest(i))).isFalse();
+    }
+
+    assertThat(history.append(timerRequest(capacity))).isTrue();
+    assertThat(history.size()).isEqualTo(capacity - TimerHistory.CHUNK_SIZE + 1);
+    assertThat(history.snapshot())
+        .containsExactlyElementsOf(requests(TimerHistory.CHUNK_SIZE, capacity + 1));
+  }
+
+  private static ArrayList<TimerRequest> requests(int fromInclusive, int toExclusive) {
+    var result = new ArrayList<TimerRequest>();
+    for (int i = fromInclusive; i < toExclusive; i++) {
+      result.add(timerRequest(i));
+    }
+    return result;
+  }
+
+  private static TimerRequest timerRequest(int second) {
+    return new TimerRequest(
+        10L, Instant.ofEpochSecond(second), "user" + second % 3, null, TimerType.TIMER);
+  }
+}
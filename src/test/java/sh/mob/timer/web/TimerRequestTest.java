@@ -0,0 +1,49 @@
+package sh.mob.timer.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import sh.mob.timer.web.Room.TimerRequest;
+import sh.mob.timer.web.Room.TimerRequest.TimerType;
+
+class TimerRequestTest {
+
+  private final Instant requested = Instant.parse("2024-05-01T09:00:00.123456789Z");
+
+  @Test
+  void keepsTheRequestedInstantToTheNanosecond() {
+    var timerRequest = new TimerRequest(10L, requested, "alice", "bob", TimerType.TIMER);
+
+    assertThat(timerRequest.getRequested()).isEqualTo(requested);
+    assertThat(timerRequest.getTimer()).isEqualTo(10L);
+    assertThat(timerRequest.expiresAt()).isEqualTo(requested.plus(Duration.ofMinutes(10)));
+    assertThat(timerRequest)
+        .isEqualTo(new TimerRequest(10L, requested, "alice", "bob", TimerType.TIMER));
+    assertThat(Room.NULL_TIMER_REQUEST.getRequested()).isNull();
+    assertThat(new TimerRequest(null, null, null, null, null).getTimer()).isNull();
+  }
+
+  @Test
+  void isActiveUntilTheTimerEnds() {
+    var end = requested.plus(Duration.ofMinutes(10));
+    var timerRequest = new TimerRequest(10L, requested, "alice", null, TimerType.TIMER);
+
+    assertThat(timerRequest.isActiveAt(requested)).isTrue();
+    assertThat(timerRequest.isActiveAt(end.minusNanos(1))).isTrue();
+    assertThat(timerRequest.isActiveAt(end)).isFalse();
+    assertThat(new TimerRequest(0L, requested, "alice", null, null).isActiveAt(requested))
+        .isFalse();
+    assertThat(Room.NULL_TIMER_REQUEST.isActiveAt(requested)).isFalse();
+  }
+
+  @Test
+  void comparesRequestedInstantsExactly() {
+    var timerRequest = new TimerRequest(10L, requested, "alice", null, TimerType.TIMER);
+
+    assertThat(timerRequest.isRequestedBefore(requested.plusNanos(1))).isTrue();
+    assertThat(timerRequest.isRequestedBefore(requested)).isFalse();
+    assertThat(Room.NULL_TIMER_REQUEST.isRequestedBefore(Instant.MAX)).isFalse();
+  }
+}